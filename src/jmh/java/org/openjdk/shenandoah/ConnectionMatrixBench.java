@@ -0,0 +1,84 @@
+package org.openjdk.shenandoah;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the connection matrix strings: from scratch, when about 1% of
+ * the rows changed since the previous sample, and when nothing changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectionMatrixBench {
+
+    @Param({"512", "2048", "8192", "32768"})
+    int regions;
+
+    @Param({"0.001", "0.01", "0.1"})
+    double density;
+
+    String[][] samples;
+    ConnectionMatrix.Decoder decoder;
+    ConnectionMatrix matrix;
+    int tick;
+
+    @Setup
+    public void setup() {
+        Workload workload = new Workload(1, Workload.MIXED);
+        samples = new String[2][];
+        samples[0] = workload.matrix(regions, density);
+        samples[1] = samples[0].clone();
+        int changed = Math.max(1, regions / 100);
+        for (int i = 0; i < changed; i++) {
+            samples[1][i * 100 % regions] = samples[0][changed - 1 - i];
+        }
+
+        // Start from the first sample, so that unchanged() and scan() see a populated matrix
+        decoder = new ConnectionMatrix.Decoder(regions);
+        for (int f = 0; f < regions; f++) {
+            decoder.row(f, samples[0][f]);
+        }
+        matrix = decoder.finish();
+    }
+
+    @Benchmark
+    public ConnectionMatrix full() {
+        return Workload.decode(samples[0]);
+    }
+
+    @Benchmark
+    public ConnectionMatrix changedRows() {
+        String[] rows = samples[tick++ & 1];
+        for (int f = 0; f < regions; f++) {
+            decoder.row(f, rows[f]);
+        }
+        return decoder.finish();
+    }
+
+    @Benchmark
+    public ConnectionMatrix unchanged() {
+        String[] rows = samples[0];
+        for (int f = 0; f < regions; f++) {
+            decoder.row(f, rows[f]);
+        }
+        return decoder.finish();
+    }
+
+    @Benchmark
+    public int scan() {
+        ConnectionMatrix m = matrix;
+        int sum = 0;
+        for (int f = 0; f < regions; f++) {
+            for (int t = m.nextSetBit(f, 0); t >= 0; t = m.nextSetBit(f, t + 1)) {
+                sum += t;
+            }
+        }
+        return sum;
+    }
+
+}
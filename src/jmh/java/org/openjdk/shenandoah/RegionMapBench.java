@@ -0,0 +1,90 @@
+package org.openjdk.shenandoah;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Painting the region map into an offscreen image: a full repaint, an
+ * incremental repaint after about 10% of regions changed, and a repaint
+ * after the connection matrix changed. Painting is split across the given
+ * number of threads, see {@link RegionMap#RegionMap(int)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RegionMapBench {
+
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 1000;
+
+    @Param({"512", "2048", "8192", "32768"})
+    int regions;
+
+    @Param({"0", "0.001", "0.01"})
+    double density;
+
+    @Param({Workload.MIXED, Workload.CSET})
+    String mix;
+
+    @Param({"1", "4"})
+    int threads;
+
+    Snapshot[] snapshots;
+    Snapshot[] rewired;
+    RegionMap map;
+    BufferedImage image;
+    Graphics2D g;
+    int tick;
+
+    @Setup
+    public void setup() {
+        Workload workload = new Workload(1, mix);
+        ConnectionMatrix[] matrices = new ConnectionMatrix[2];
+        for (int i = 0; i < matrices.length; i++) {
+            matrices[i] = (density == 0) ? null : Workload.decode(workload.matrix(regions, density));
+        }
+
+        long[] a = workload.words(regions);
+        long[] b = a.clone();
+        workload.mutate(b, 0.1);
+        snapshots = new Snapshot[2];
+        snapshots[0] = new Snapshot(0, 1024, a, matrices[0], 0);
+        snapshots[1] = new Snapshot(snapshots[0], 1, b, matrices[0], 0);
+        rewired = new Snapshot[2];
+        rewired[0] = snapshots[0];
+        rewired[1] = new Snapshot(snapshots[0], 1, a, matrices[1], 0);
+
+        map = new RegionMap(threads);
+        map.resize(WIDTH, HEIGHT);
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public void full() {
+        map.resize(WIDTH, HEIGHT);
+        map.render(g, snapshots[0]);
+    }
+
+    @Benchmark
+    public void changedRegions() {
+        map.render(g, snapshots[tick++ & 1]);
+    }
+
+    @Benchmark
+    public void changedMatrix() {
+        map.render(g, rewired[tick++ & 1]);
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.openjdk.shenandoah;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding and painting of region words. Run with {@code -prof gc} to see
+ * the allocation rate: the table-driven paths should not allocate per region.
+ * The raster benchmark paints the same cells as render, without Java2D.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegionStatBench {
+
+    private static final int CELL = 8;
+
+    @Param({"2048"})
+    int regions;
+
+    Snapshot snapshot;
+    long[] data;
+    BufferedImage image;
+    Graphics2D g;
+    RegionRaster raster;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(1);
+        RegionState[] states = RegionState.values();
+        data = new long[regions];
+        for (int i = 0; i < regions; i++) {
+            data[i] = RegionStat.pack(r.nextInt(101) / 100F, r.nextInt(101) / 100F,
+                    r.nextInt(34) / 100F, r.nextInt(33) / 100F, r.nextInt(33) / 100F,
+                    states[r.nextInt(states.length)]);
+        }
+        snapshot = new Snapshot(0, 1024, data.clone(), null, 0);
+        image = new BufferedImage(CELL + 2, CELL + 2, BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+        raster = new RegionRaster(image);
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) {
+        for (long d : data) {
+            bh.consume(RegionStat.state(d));
+            bh.consume(RegionStat.usedPercent(d));
+            bh.consume(RegionStat.livePercent(d));
+        }
+    }
+
+    @Benchmark
+    public void decodeViaRegionStat(Blackhole bh) {
+        for (int i = 0; i < regions; i++) {
+            RegionStat s = snapshot.get(i);
+            bh.consume(s.state());
+            bh.consume(s.used());
+            bh.consume(s.live());
+        }
+    }
+
+    @Benchmark
+    public void render() {
+        for (long d : data) {
+            RegionStat.render(g, d, 0, 0, CELL, CELL);
+        }
+    }
+
+    @Benchmark
+    public void raster() {
+        for (long d : data) {
+            raster.render(d, 0, 0, CELL, CELL);
+        }
+    }
+
+    @Benchmark
+    public void renderViaRegionStat() {
+        for (int i = 0; i < regions; i++) {
+            snapshot.get(i).render(g, 0, 0, CELL, CELL);
+        }
+    }
+
+}
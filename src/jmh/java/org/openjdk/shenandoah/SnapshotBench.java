@@ -0,0 +1,91 @@
+package org.openjdk.shenandoah;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample work outside of painting: generating region words, simulating
+ * a heap, building key and delta snapshots with their aggregates, and
+ * diffing snapshots.
+ * Samples alternate between two heaps that differ in about 10% of regions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBench {
+
+    @Param({"512", "2048", "8192", "32768"})
+    int regions;
+
+    @Param({Workload.MIXED, Workload.EMPTY, Workload.HUMONGOUS, Workload.CSET})
+    String mix;
+
+    Workload workload;
+    HeapSimulator simulator;
+    long[][] samples;
+    Snapshot[] snapshots;
+    long[] scratch;
+    Snapshot last;
+    int tick;
+
+    @Setup
+    public void setup() {
+        workload = new Workload(1, mix);
+        simulator = new HeapSimulator("regions=" + regions);
+        samples = new long[2][];
+        samples[0] = workload.words(regions);
+        samples[1] = samples[0].clone();
+        workload.mutate(samples[1], 0.1);
+        snapshots = new Snapshot[2];
+        snapshots[0] = new Snapshot(0, 1024, samples[0].clone(), null, 0);
+        snapshots[1] = new Snapshot(snapshots[0], 1, samples[1], null, 0);
+        scratch = new long[regions];
+        last = snapshots[0];
+    }
+
+    @Benchmark
+    public long[] generate() {
+        for (int i = 0; i < regions; i++) {
+            scratch[i] = workload.word(i);
+        }
+        return scratch;
+    }
+
+    /**
+     * One step of the simulated heap, including its snapshot.
+     */
+    @Benchmark
+    public Snapshot simulate() {
+        return simulator.snapshot();
+    }
+
+    /**
+     * Full aggregation over all regions.
+     */
+    @Benchmark
+    public Snapshot keyFrame() {
+        int t = tick++;
+        return new Snapshot(t, 1024, samples[t & 1].clone(), null, 0);
+    }
+
+    /**
+     * Diff against the previous sample, and aggregates updated for changed regions only.
+     */
+    @Benchmark
+    public Snapshot deltaFrame() {
+        int t = tick++;
+        last = new Snapshot(last, t, samples[t & 1], null, 0);
+        return last;
+    }
+
+    @Benchmark
+    public SnapshotDelta diff() {
+        int t = tick++ & 1;
+        return SnapshotDelta.between(snapshots[t], snapshots[t ^ 1]);
+    }
+
+}
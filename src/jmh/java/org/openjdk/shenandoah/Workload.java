@@ -0,0 +1,102 @@
+package org.openjdk.shenandoah;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic region data for the benchmarks.
+ */
+class Workload {
+
+    /**
+     * Region state mixes: a busy heap with every state, a mostly empty heap,
+     * a heap full of humongous runs, and a heap in the middle of evacuation.
+     */
+    static final String MIXED = "mixed";
+    static final String EMPTY = "empty";
+    static final String HUMONGOUS = "humongous";
+    static final String CSET = "cset";
+
+    private static final RegionState[] ALL = RegionState.values();
+
+    private final Random r;
+    private final String mix;
+
+    Workload(long seed, String mix) {
+        this.r = new Random(seed);
+        this.mix = mix;
+    }
+
+    private RegionState state(int i) {
+        int p = r.nextInt(100);
+        switch (mix) {
+            case MIXED:
+                return ALL[r.nextInt(ALL.length)];
+            case EMPTY:
+                return (p < 90) ? RegionState.EMPTY_COMMITTED : RegionState.REGULAR;
+            case HUMONGOUS:
+                // Runs of humongous regions, 64 long
+                return ((i / 64) % 4 != 0) ? RegionState.HUMONGOUS : RegionState.REGULAR;
+            case CSET:
+                return (p < 30) ? RegionState.CSET : (p < 35) ? RegionState.TRASH : RegionState.REGULAR;
+            default:
+                throw new IllegalArgumentException("Unknown mix: " + mix);
+        }
+    }
+
+    long word(int i) {
+        RegionState s = state(i);
+        boolean empty = s == RegionState.EMPTY_COMMITTED || s == RegionState.EMPTY_UNCOMMITTED;
+        float used = empty ? 0 : r.nextInt(101) / 100F;
+        return RegionStat.pack(used, used * r.nextInt(101) / 100F,
+                used * r.nextInt(34) / 100F, used * r.nextInt(33) / 100F, used * r.nextInt(33) / 100F, s);
+    }
+
+    long[] words(int regions) {
+        long[] data = new long[regions];
+        for (int i = 0; i < regions; i++) {
+            data[i] = word(i);
+        }
+        return data;
+    }
+
+    /**
+     * Re-generates roughly the given fraction of regions in place.
+     */
+    void mutate(long[] data, double fraction) {
+        int n = (int) (data.length * fraction);
+        for (int k = 0; k < n; k++) {
+            int i = r.nextInt(data.length);
+            data[i] = word(i);
+        }
+    }
+
+    /**
+     * @return per-region matrix strings, as published by the JVM, where each
+     * region connects to the given fraction of all regions
+     */
+    String[] matrix(int regions, double density) {
+        String[] rows = new String[regions];
+        int chars = (regions + 5) / 6;
+        int connections = (int) Math.round(regions * density);
+        char[] row = new char[chars];
+        for (int f = 0; f < regions; f++) {
+            Arrays.fill(row, (char) 32);
+            for (int k = 0; k < connections; k++) {
+                int t = r.nextInt(regions);
+                row[t / 6] = (char) (((row[t / 6] - 32) | (1 << (t % 6))) + 32);
+            }
+            rows[f] = new String(row);
+        }
+        return rows;
+    }
+
+    static ConnectionMatrix decode(String[] rows) {
+        ConnectionMatrix.Decoder decoder = new ConnectionMatrix.Decoder(rows.length);
+        for (int f = 0; f < rows.length; f++) {
+            decoder.row(f, rows[f]);
+        }
+        return decoder.finish();
+    }
+
+}
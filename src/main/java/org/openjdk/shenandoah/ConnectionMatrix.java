@@ -0,0 +1,232 @@
+package org.openjdk.shenandoah;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Region connection matrix of one sample, stored as one bitmap row of
+ * {@code long} words per region. Row {@code f} has bit {@code t} set when the
+ * JVM reported a connection from region {@code f} to region {@code t}.
+ *
+ * Instances and their rows are immutable once built, so consecutive snapshots
+ * share the whole matrix when it did not change, and the unchanged rows
+ * otherwise.
+ */
+public class ConnectionMatrix {
+
+    private static final int BITS_PER_CHAR = 6;
+
+    private final int size;
+    private final int stride;
+    private final long[][] rows;
+
+    private ConnectionMatrix(int size, long[][] rows) {
+        this.size = size;
+        this.stride = stride(size);
+        this.rows = rows;
+    }
+
+    private static int stride(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean get(int from, int to) {
+        return (rows[from][to >>> 6] & (1L << to)) != 0;
+    }
+
+    /**
+     * @return first region at or after {@code to} that {@code from} connects to, or -1
+     */
+    public int nextSetBit(int from, int to) {
+        if (to >= size) {
+            return -1;
+        }
+        long[] row = rows[from];
+        int w = to >>> 6;
+        long word = row[w] & (-1L << to);
+        while (true) {
+            if (word != 0) {
+                int t = (w << 6) + Long.numberOfTrailingZeros(word);
+                return (t < size) ? t : -1;
+            }
+            if (++w == stride) {
+                return -1;
+            }
+            word = row[w];
+        }
+    }
+
+    /**
+     * @return total number of connections
+     */
+    public int count() {
+        int n = 0;
+        for (long[] row : rows) {
+            for (long w : row) {
+                n += Long.bitCount(w);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return true if the row has no connections
+     */
+    public boolean isEmpty(int from) {
+        for (long w : rows[from]) {
+            if (w != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return copy of the row as a BitSet, or null if it is empty
+     */
+    public BitSet row(int from) {
+        if (isEmpty(from)) {
+            return null;
+        }
+        return BitSet.valueOf(rows[from]);
+    }
+
+    /**
+     * @return true if both matrices share the storage of the row, which implies equal rows
+     */
+    boolean sharesRow(ConnectionMatrix other, int from) {
+        return rows[from] == other.rows[from];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ConnectionMatrix that = (ConnectionMatrix) o;
+        return size == that.size && Arrays.deepEquals(rows, that.rows);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.deepHashCode(rows);
+    }
+
+    /**
+     * Builds matrices from the per-region matrix strings published by the JVM,
+     * six connections per character, offset by 32. Rows are compared with the
+     * previous sample in their raw form, and only changed rows are decoded.
+     * If nothing changed, the previous matrix is returned as is. Otherwise the
+     * new matrix shares all unchanged rows with the previous one, and all empty
+     * rows share a single zero row, so a changed sample costs the row table
+     * plus the changed rows rather than a copy of the whole bitmap.
+     */
+    public static class Decoder {
+        private final int size;
+        private final int stride;
+        private final long[] empty;
+        private final byte[][] raw;
+        private final int[] rawLength;
+        private ConnectionMatrix prev;
+        private long[][] next;
+
+        public Decoder(int size) {
+            this.size = size;
+            this.stride = stride(size);
+            this.empty = new long[stride];
+            this.raw = new byte[size][];
+            this.rawLength = new int[size];
+        }
+
+        /**
+         * Sets the row from raw characters, e.g. read straight from perf data.
+         */
+        public void row(int from, byte[] chars, int length) {
+            byte[] r = raw[from];
+            if (prev != null && r != null && rawLength[from] == length &&
+                    Arrays.equals(r, 0, length, chars, 0, length)) {
+                return;
+            }
+            System.arraycopy(chars, 0, reserve(from, length), 0, length);
+            decode(from);
+        }
+
+        /**
+         * Sets the row from a matrix string, e.g. from a jvmstat monitor.
+         */
+        public void row(int from, String chars) {
+            int length = chars.length();
+            byte[] r = raw[from];
+            if (prev != null && r != null && rawLength[from] == length) {
+                int i = 0;
+                while (i < length && r[i] == (byte) chars.charAt(i)) {
+                    i++;
+                }
+                if (i == length) {
+                    return;
+                }
+            }
+            r = reserve(from, length);
+            for (int i = 0; i < length; i++) {
+                r[i] = (byte) chars.charAt(i);
+            }
+            decode(from);
+        }
+
+        private byte[] reserve(int from, int length) {
+            byte[] r = raw[from];
+            if (r == null || r.length < length) {
+                r = raw[from] = new byte[Math.max(length, 16)];
+            }
+            rawLength[from] = length;
+            return r;
+        }
+
+        private void decode(int from) {
+            byte[] chars = raw[from];
+            long[] row = null;
+            int idx = 0;
+            for (int i = 0; i < rawLength[from]; i++) {
+                int c = (chars[i] - 32) & 0x3f;
+                for (int bit = 0; bit < BITS_PER_CHAR; bit++, idx++) {
+                    if ((c & (1 << bit)) != 0 && idx < size) {
+                        if (row == null) {
+                            row = new long[stride];
+                        }
+                        row[idx >>> 6] |= 1L << idx;
+                    }
+                }
+            }
+            // Rows are shared with earlier matrices, so a changed row is always a new array
+            edit()[from] = (row == null) ? empty : row;
+        }
+
+        private long[][] edit() {
+            if (next == null) {
+                if (prev == null) {
+                    next = new long[size][];
+                    Arrays.fill(next, empty);
+                } else {
+                    next = prev.rows.clone();
+                }
+            }
+            return next;
+        }
+
+        /**
+         * @return matrix with all rows set so far; the previous one if nothing changed
+         */
+        public ConnectionMatrix finish() {
+            if (next != null || prev == null) {
+                prev = new ConnectionMatrix(size, edit());
+                next = null;
+            }
+            return prev;
+        }
+    }
+
+}
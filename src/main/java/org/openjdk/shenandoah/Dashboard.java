@@ -0,0 +1,312 @@
+package org.openjdk.shenandoah;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Overview of many JVMs in one window. Every target gets a tile with a small
+ * region map and a sparkline of heap usage.
+ *
+ * All pull sources share one sampling tick, which splits the targets into a
+ * few batches sampled in parallel by a small pool, so the number of threads
+ * does not grow with the number of targets. Push sources deliver their
+ * snapshots through their publishers. Painting runs at a capped rate and only
+ * when some target changed, and each tile map only repaints changed regions.
+ */
+public class Dashboard {
+
+    public static final int MAX_SAMPLERS = 4;
+    public static final int SPARK_POINTS = 120;
+    public static final long SPARK_PERIOD_MS = 1000;
+
+    private static final int K = 1024;
+    private static final int LINE = 16;
+    private static final int SPARK_HEIGHT = 24;
+    private static final int PAD = 6;
+
+    private final int interval;
+    private final List<Tile> tiles = new CopyOnWriteArrayList<>();
+    private final AtomicLong frames = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService samplers;
+    private final int batches;
+    private long refreshedFrames;
+
+    public Dashboard(int interval) {
+        this.interval = interval;
+        this.batches = Math.max(1, Math.min(MAX_SAMPLERS, Runtime.getRuntime().availableProcessors()));
+        this.scheduler = Executors.newScheduledThreadPool(2);
+        this.samplers = Executors.newFixedThreadPool(batches);
+    }
+
+    /**
+     * Starts sampling, and repainting the given component at most {@code fps} times a second.
+     */
+    public void start(Component target, int fps) {
+        scheduler.scheduleAtFixedRate(this::sample, 0, interval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(() -> {
+            long f = frames.get();
+            if (f != refreshedFrames) {
+                refreshedFrames = f;
+                target.repaint();
+            }
+        }, 0, 1_000_000 / fps, TimeUnit.MICROSECONDS);
+    }
+
+    public void add(String name, SnapshotSource source) {
+        Tile tile = new Tile(name, source);
+        tiles.add(tile);
+        Flow.Publisher<Snapshot> publisher = source.publisher();
+        if (publisher != null) {
+            tile.accept(source.snapshot());
+            publisher.subscribe(tile);
+        }
+        frames.incrementAndGet();
+    }
+
+    /**
+     * Removes the target with the given name and closes its source.
+     */
+    public void remove(String name) {
+        for (Tile t : tiles) {
+            if (t.name.equals(name)) {
+                remove(t);
+            }
+        }
+    }
+
+    private void remove(Tile t) {
+        if (tiles.remove(t)) {
+            try {
+                t.source.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            frames.incrementAndGet();
+        }
+    }
+
+    public int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Samples all pull sources once. Called on every tick, and directly by tests.
+     */
+    void sample() {
+        List<Tile> pull = new ArrayList<>();
+        for (Tile t : tiles) {
+            if (!t.push) {
+                pull.add(t);
+            }
+        }
+        if (pull.isEmpty()) {
+            return;
+        }
+
+        // Contiguous batches, so each tile is always sampled by one thread at a time
+        int n = Math.min(batches, pull.size());
+        List<Callable<Void>> tasks = new ArrayList<>(n);
+        for (int b = 0; b < n; b++) {
+            List<Tile> batch = pull.subList(b * pull.size() / n, (b + 1) * pull.size() / n);
+            tasks.add(() -> {
+                for (Tile t : batch) {
+                    try {
+                        t.accept(t.source.snapshot());
+                    } catch (RuntimeException e) {
+                        // The JVM is gone, its tile disappears
+                        remove(t);
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            samplers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return sparkline of the named target, oldest point first, or null if there is no such target
+     */
+    float[] sparkline(String name) {
+        for (Tile t : tiles) {
+            if (t.name.equals(name)) {
+                long end = t.sparkEnd;
+                int count = (int) Math.min(end + 1, SPARK_POINTS);
+                float[] points = new float[count];
+                for (int i = 0; i < count; i++) {
+                    points[i] = t.spark[(int) ((end - count + 1 + i) % SPARK_POINTS)];
+                }
+                return points;
+            }
+        }
+        return null;
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+        samplers.shutdown();
+        for (Tile t : tiles) {
+            remove(t);
+        }
+    }
+
+    /**
+     * Paints all tiles in a grid that fills the given area.
+     * Must be called on the event dispatch thread.
+     */
+    public void render(Graphics g, int width, int height) {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+
+        List<Tile> snapshot = new ArrayList<>(tiles);
+        int n = snapshot.size();
+        if (n == 0) {
+            g.setColor(Color.BLACK);
+            g.drawString("Waiting for JVMs...", PAD, LINE);
+            return;
+        }
+
+        int cols = Math.max(1, (int) Math.ceil(Math.sqrt(1D * n * width / Math.max(1, height))));
+        cols = Math.min(cols, n);
+        int rows = (n + cols - 1) / cols;
+        int tileWidth = width / cols;
+        int tileHeight = height / rows;
+
+        for (int i = 0; i < n; i++) {
+            int x = (i % cols) * tileWidth;
+            int y = (i / cols) * tileHeight;
+            Graphics tg = g.create(x + PAD, y + PAD, tileWidth - 2 * PAD, tileHeight - 2 * PAD);
+            snapshot.get(i).render(tg, tileWidth - 2 * PAD, tileHeight - 2 * PAD);
+            tg.dispose();
+        }
+    }
+
+    private class Tile implements Flow.Subscriber<Snapshot> {
+        final String name;
+        final SnapshotSource source;
+        final boolean push;
+        final RegionMap map = new RegionMap();
+        int mapWidth, mapHeight;
+
+        volatile Snapshot snapshot;
+
+        // Sparkline ring: peak usage fraction per SPARK_PERIOD_MS, single writer
+        final float[] spark = new float[SPARK_POINTS];
+        volatile long sparkEnd;
+        long sparkStart = -1;
+
+        Tile(String name, SnapshotSource source) {
+            this.name = name;
+            this.source = source;
+            this.push = source.publisher() != null;
+        }
+
+        void accept(Snapshot s) {
+            Snapshot prev = snapshot;
+            snapshot = s;
+
+            float used = (s.total() == 0) ? 0 : 1F * s.used() / s.total();
+            long e = sparkEnd;
+            if (sparkStart < 0 || s.time() < sparkStart) {
+                sparkStart = s.time();
+                spark[(int) (e % SPARK_POINTS)] = used;
+            } else if (s.time() - sparkStart >= SPARK_PERIOD_MS) {
+                sparkStart = s.time();
+                e++;
+                spark[(int) (e % SPARK_POINTS)] = used;
+            } else {
+                int idx = (int) (e % SPARK_POINTS);
+                spark[idx] = Math.max(spark[idx], used);
+            }
+            sparkEnd = e;
+
+            if (prev == null || !s.delta().isEmpty() || prev.phase() != s.phase()) {
+                frames.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Snapshot item) {
+            accept(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            remove(this);
+        }
+
+        @Override
+        public void onComplete() {
+            remove(this);
+        }
+
+        void render(Graphics g, int width, int height) {
+            Snapshot s = snapshot;
+            g.setColor(Color.BLACK);
+            g.drawRect(0, 0, width - 1, height - 1);
+            g.drawString(name, 2, LINE - 4);
+            if (s == null) {
+                return;
+            }
+            String summary = s.phase().name() + ", " + (s.used() / K) + "/" + (s.total() / K) + " MB";
+            FontMetrics fm = g.getFontMetrics();
+            g.drawString(summary, Math.max(2, width - fm.stringWidth(summary) - 2), LINE - 4);
+
+            int w = width - 2;
+            int h = height - LINE - SPARK_HEIGHT - 2;
+            if (w != mapWidth || h != mapHeight) {
+                mapWidth = w;
+                mapHeight = h;
+                map.resize(w, h);
+            }
+            Graphics mg = g.create(1, LINE, w, Math.max(0, h));
+            map.render(mg, s);
+            mg.dispose();
+
+            renderSpark(g, 1, height - SPARK_HEIGHT - 1, w, SPARK_HEIGHT);
+        }
+
+        private void renderSpark(Graphics g, int x, int y, int width, int height) {
+            g.setColor(Colors.USED);
+            g.fillRect(x, y, width, height);
+
+            long end = sparkEnd;
+            int count = (int) Math.min(end + 1, SPARK_POINTS);
+            if (count < 2) {
+                return;
+            }
+            g.setColor(Colors.TIMELINE_IDLE);
+            int px = 0, py = 0;
+            for (int i = 0; i < count; i++) {
+                long seq = end - count + 1 + i;
+                int cx = x + width - 1 - (int) ((long) (count - 1 - i) * (width - 1) / (SPARK_POINTS - 1));
+                int cy = y + height - 1 - Math.round(spark[(int) (seq % SPARK_POINTS)] * (height - 1));
+                if (i > 0) {
+                    g.drawLine(px, py, cx, cy);
+                }
+                px = cx;
+                py = cy;
+            }
+        }
+    }
+
+}
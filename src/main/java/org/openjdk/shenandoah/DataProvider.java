@@ -2,57 +2,306 @@ package org.openjdk.shenandoah;
 
 import sun.jvmstat.monitor.*;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
 
-public class DataProvider {
+/**
+ * Samples region counters of a JVM through jvmstat, or directly from the
+ * mapped hsperfdata file when the JVM is local.
+ */
+public class DataProvider implements SnapshotSource {
+
+    static final String PREFIX = "sun.gc.shenandoah.regions.";
+
+    private static final String REGION = "region.";
+    private static final String DATA = ".data";
+    private static final String MATRIX = ".matrix";
 
     private final int maxRegions;
     private final long maxSize;
+    private final boolean hasMatrix;
+    private final long[] words;
+    private final ConnectionMatrix.Decoder matrixDecoder;
+    private final byte[] matrixBytes;
+    private Snapshot last;
+
+    // Startup cost: counter resolution, and everything up to the first snapshot
+    private final long attachNanos;
+    private final long attachStart;
+    private long firstFrameNanos = -1;
+
+    // Fast path: offsets into the mapped hsperfdata file
+    private final PerfData perf;
+    private final int[] dataOffsets;
+    private final int[] matrixOffsets;
+    private final int[] matrixCapacities;
+    private final int statusOffset;
+
+    // Fallback: jvmstat monitors
+    private final MonitoredHost host;
+    private final MonitoredVm vm;
     private final LongMonitor[] data;
     private final StringMonitor[] matrix;
-    private final LongMonitor timestamp;
     private final LongMonitor status;
 
     public DataProvider(String id) throws Exception {
-        MonitoredHost host = MonitoredHost.getMonitoredHost(id);
-        MonitoredVm vm = host.getMonitoredVm(new VmIdentifier(id));
-        timestamp = (LongMonitor) vm.findByName("sun.gc.shenandoah.regions.timestamp");
-        LongMonitor max_regions_mon = (LongMonitor) vm.findByName("sun.gc.shenandoah.regions.max_regions");
-        maxRegions = (int) max_regions_mon.longValue();
-        LongMonitor max_size_mon = (LongMonitor) vm.findByName("sun.gc.shenandoah.regions.region_size");
-        maxSize = max_size_mon.longValue();
-        status = (LongMonitor) vm.findByName("sun.gc.shenandoah.regions.status");
+        long start = System.nanoTime();
+        PerfData pd = tryMap(id);
+        if (pd != null) {
+            perf = pd;
+            try {
+                maxRegions = (int) perf.getLong(requireLong(PREFIX + "max_regions"));
+                maxSize = perf.getLong(requireLong(PREFIX + "region_size"));
+                statusOffset = requireLong(PREFIX + "status");
+
+                // Counters are allocated in order, so running out of memory drops the last ones
+                if (maxRegions > 0 && perf.longOffset(PREFIX + REGION + (maxRegions - 1) + DATA) < 0) {
+                    throw insufficientMemory();
+                }
+
+                dataOffsets = new int[maxRegions];
+                matrixOffsets = new int[maxRegions];
+                matrixCapacities = new int[maxRegions];
+                Arrays.fill(dataOffsets, -1);
+                Arrays.fill(matrixOffsets, -1);
+                perf.forEachLong(PREFIX + REGION, (name, off) -> {
+                    int idx = regionIndex(name, DATA);
+                    if (idx >= 0) {
+                        dataOffsets[idx] = off;
+                    }
+                });
+                perf.forEachString(PREFIX + REGION, (name, off) -> {
+                    int idx = regionIndex(name, MATRIX);
+                    if (idx >= 0) {
+                        matrixOffsets[idx] = off;
+                        matrixCapacities[idx] = perf.stringCapacity(name);
+                    }
+                });
+                for (int off : dataOffsets) {
+                    if (off < 0) {
+                        throw insufficientMemory();
+                    }
+                }
+                boolean anyMatrix = false;
+                for (int off : matrixOffsets) {
+                    anyMatrix |= off >= 0;
+                }
+                hasMatrix = anyMatrix;
+            } catch (RuntimeException e) {
+                pd.close();
+                throw e;
+            }
+
+            host = null;
+            vm = null;
+            data = null;
+            matrix = null;
+            status = null;
+        } else {
+            host = MonitoredHost.getMonitoredHost(id);
+            vm = host.getMonitoredVm(new VmIdentifier(id));
+            try {
+                LongMonitor max_regions_mon = (LongMonitor) vm.findByName(PREFIX + "max_regions");
+                maxRegions = (int) max_regions_mon.longValue();
+                LongMonitor max_size_mon = (LongMonitor) vm.findByName(PREFIX + "region_size");
+                maxSize = max_size_mon.longValue();
+                status = (LongMonitor) vm.findByName(PREFIX + "status");
+
+                if (maxRegions > 0 && vm.findByName(PREFIX + REGION + (maxRegions - 1) + DATA) == null) {
+                    throw insufficientMemory();
+                }
+
+                // One pass over the counter directory, instead of two lookups per region
+                data = new LongMonitor[maxRegions];
+                matrix = new StringMonitor[maxRegions];
+                boolean anyMatrix = false;
+                for (Monitor mon : vm.findByPattern(Pattern.quote(PREFIX + REGION) + "\\d+\\..*")) {
+                    String name = mon.getName();
+                    int idx;
+                    if ((idx = regionIndex(name, DATA)) >= 0 && mon instanceof LongMonitor) {
+                        data[idx] = (LongMonitor) mon;
+                    } else if ((idx = regionIndex(name, MATRIX)) >= 0 && mon instanceof StringMonitor) {
+                        matrix[idx] = (StringMonitor) mon;
+                        anyMatrix = true;
+                    }
+                }
+                for (LongMonitor mon : data) {
+                    if (mon == null) {
+                        throw insufficientMemory();
+                    }
+                }
+                hasMatrix = anyMatrix;
+            } catch (Exception e) {
+                host.detach(vm);
+                throw e;
+            }
 
-        data = new LongMonitor[maxRegions];
-        matrix = new StringMonitor[maxRegions];
-        for (int i = 0; i < maxRegions; i++) {
-            LongMonitor mon = (LongMonitor) vm.findByName("sun.gc.shenandoah.regions.region." + i + ".data");
-            if (mon != null) {
-                data[i] = mon;
-            } else {
-                throw new IllegalStateException("Insufficient shared memory for all region counters. " +
-                        "Try -XX:PerfDataMemorySize=512K or higher when running the monitored program.");
+            perf = null;
+            dataOffsets = null;
+            matrixOffsets = null;
+            matrixCapacities = null;
+            statusOffset = -1;
+        }
+        words = new long[maxRegions];
+        matrixDecoder = hasMatrix ? new ConnectionMatrix.Decoder(maxRegions) : null;
+        int capacity = 0;
+        if (hasMatrix && perf != null) {
+            for (int c : matrixCapacities) {
+                capacity = Math.max(capacity, c);
             }
+        }
+        matrixBytes = new byte[capacity];
+        attachNanos = System.nanoTime() - start;
+        attachStart = start;
+    }
+
+    /**
+     * Parses the region index out of {@code PREFIX + "region." + idx + suffix}.
+     *
+     * @return region index, or -1 if the name has a different suffix or an index out of range
+     */
+    private int regionIndex(String name, String suffix) {
+        if (!name.endsWith(suffix)) {
+            return -1;
+        }
+        int from = PREFIX.length() + REGION.length();
+        int to = name.length() - suffix.length();
+        if (to <= from) {
+            return -1;
+        }
+        int idx = 0;
+        for (int i = from; i < to; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            idx = idx * 10 + (c - '0');
+            if (idx >= maxRegions) {
+                return -1;
+            }
+        }
+        return idx;
+    }
 
-            StringMonitor mtrx = (StringMonitor) vm.findByName("sun.gc.shenandoah.regions.region." + i + ".matrix");
-            if (mtrx != null) {
-                matrix[i] = mtrx;
+    /**
+     * Maps the hsperfdata file directly when the identifier names a local JVM.
+     *
+     * @return mapped perf data, or null if the jvmstat path should be used instead
+     */
+    private static PerfData tryMap(String id) {
+        try {
+            VmIdentifier vmid = new VmIdentifier(id);
+            HostIdentifier hostid = new HostIdentifier(vmid);
+            if (!"local".equals(hostid.getScheme()) || !"localhost".equals(hostid.getHost())) {
+                return null;
             }
+            PerfData pd = PerfData.attach(vmid.getLocalVmId());
+            if (pd.longOffset(PREFIX + "max_regions") < 0) {
+                pd.close();
+                return null;
+            }
+            return pd;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private int requireLong(String name) {
+        int off = perf.longOffset(name);
+        if (off < 0) {
+            throw new IllegalStateException("Missing counter: " + name);
         }
+        return off;
+    }
+
+    private static IllegalStateException insufficientMemory() {
+        return new IllegalStateException("Insufficient shared memory for all region counters. " +
+                "Try -XX:PerfDataMemorySize=512K or higher when running the monitored program.");
     }
 
+    /**
+     * Samples the region counters. Every snapshot carries its delta against
+     * the previous one, and shares unchanged data with it.
+     *
+     * When nothing changed, reading the mapped file allocates nothing: matrix
+     * rows are copied into a scratch buffer and compared before decoding.
+     * Through jvmstat, every published matrix row is still read as a new
+     * String on every tick, since the monitors offer no way around that.
+     */
+    @Override
     public Snapshot snapshot() {
-        List<RegionStat> stats = new ArrayList<>();
-        for (int c = 0; c < maxRegions; c++) {
-            StringMonitor mtrx = matrix[c];
-            stats.add(new RegionStat(data[c].longValue(), (mtrx == null ? "" : mtrx.stringValue())));
+        long st;
+        if (perf != null) {
+            perf.getLongs(dataOffsets, words);
+            st = perf.getLong(statusOffset);
+        } else {
+            for (int c = 0; c < maxRegions; c++) {
+                words[c] = data[c].longValue();
+            }
+            st = status.longValue();
+        }
+
+        ConnectionMatrix connections = null;
+        if (hasMatrix) {
+            for (int c = 0; c < maxRegions; c++) {
+                if (perf != null) {
+                    int off = matrixOffsets[c];
+                    matrixDecoder.row(c, matrixBytes, (off < 0) ? 0 : perf.getBytes(off, matrixCapacities[c], matrixBytes));
+                } else {
+                    StringMonitor mtrx = matrix[c];
+                    matrixDecoder.row(c, (mtrx == null) ? "" : mtrx.stringValue());
+                }
+            }
+            connections = matrixDecoder.finish();
         }
 
         // Cannot use timestamp value from the dataset itself, because statistics
         // is not reported continuously
         long time = System.currentTimeMillis();
-        return new Snapshot(time, maxSize, stats, (int) status.longValue());
+        Snapshot cur = (last == null) ?
+                new Snapshot(time, maxSize, words.clone(), connections, (int) st) :
+                new Snapshot(last, time, words, connections, (int) st);
+        if (last == null) {
+            firstFrameNanos = System.nanoTime() - attachStart;
+        }
+        last = cur;
+        return cur;
+    }
+
+    /**
+     * @return nanoseconds spent resolving the region counters
+     */
+    public long attachNanos() {
+        return attachNanos;
+    }
+
+    /**
+     * @return nanoseconds from the start of the constructor to the first snapshot, or -1 before it
+     */
+    public long timeToFirstFrameNanos() {
+        return firstFrameNanos;
+    }
+
+    public int regionCount() {
+        return maxRegions;
+    }
+
+    /**
+     * Unmaps the hsperfdata file, or detaches from the jvmstat VM.
+     */
+    @Override
+    public void close() throws IOException {
+        if (perf != null) {
+            perf.close();
+        }
+        if (vm != null) {
+            try {
+                host.detach(vm);
+            } catch (MonitorException e) {
+                throw new IOException(e);
+            }
+        }
     }
 
 }
@@ -0,0 +1,246 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds local JVMs that publish Shenandoah region counters, by watching the
+ * {@code hsperfdata_<user>} directories under the temporary directory.
+ *
+ * New hsperfdata files are probed with {@link PerfData#publishes(Path, String)},
+ * which only reads the prologue and the counter names. Files of JVMs that are
+ * still starting up are probed again on every poll until their counters are
+ * published or {@link #PENDING_MS} passes. A JVM is detached when its file is
+ * deleted, or when its process is gone, e.g. after a crash left the file behind.
+ * When the watch service loses events, every watched directory is listed again.
+ */
+public class Discovery implements Closeable {
+
+    public static final long POLL_MS = 1000;
+    public static final long PENDING_MS = 30_000;
+
+    private static final String DIR_PREFIX = "hsperfdata_";
+
+    /**
+     * Receives attach and detach events on the discovery thread.
+     */
+    public interface Listener {
+        void attach(int pid);
+
+        void detach(int pid);
+    }
+
+    private final Path root;
+    private final Listener listener;
+    private final WatchService watcher;
+    private final WatchKey rootKey;
+    private final Thread thread;
+
+    private final Map<WatchKey, Path> dirs = new HashMap<>();
+    private final Map<Integer, Long> pending = new HashMap<>();
+    private final Set<Integer> attached = new HashSet<>();
+
+    public Discovery(Listener listener) throws IOException {
+        this(Paths.get(System.getProperty("java.io.tmpdir")), listener);
+    }
+
+    public Discovery(Path root, Listener listener) throws IOException {
+        this.root = root;
+        this.listener = listener;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.rootKey = root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+        this.thread = new Thread(this::loop, "Discovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void loop() {
+        try {
+            rescan();
+            while (true) {
+                WatchKey key = watcher.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                recheck();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void rescan() {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, DIR_PREFIX + "*")) {
+            for (Path dir : ds) {
+                watchDir(dir);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot list " + root + ": " + e.getMessage());
+        }
+    }
+
+    private void watchDir(Path dir) {
+        if (!Files.isDirectory(dir) || dirs.containsValue(dir)) {
+            return;
+        }
+        try {
+            WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            dirs.put(key, dir);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path f : ds) {
+                    created(f);
+                }
+            }
+        } catch (IOException e) {
+            // Other users' directories are usually not readable
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = dirs.get(key);
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                resync();
+                continue;
+            }
+            Path name = (Path) ev.context();
+            if (key == rootKey) {
+                if (name.toString().startsWith(DIR_PREFIX)) {
+                    watchDir(root.resolve(name));
+                }
+            } else if (dir == null) {
+                break;
+            } else if (ev.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                created(dir.resolve(name));
+            } else if (ev.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                deleted(dir.resolve(name));
+            }
+        }
+        if (!key.reset()) {
+            dirs.remove(key);
+        }
+    }
+
+    /**
+     * Recovers from lost events: watches new directories, attaches JVMs whose
+     * files appeared, and detaches JVMs whose files are gone.
+     */
+    private void resync() {
+        rescan();
+        Set<Integer> present = new HashSet<>();
+        for (Path dir : dirs.values()) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path f : ds) {
+                    int pid = pid(f);
+                    present.add(pid);
+                    if (!pending.containsKey(pid)) {
+                        created(f);
+                    }
+                }
+            } catch (IOException e) {
+                // Deleted directory, its key is dropped on its next event
+            }
+        }
+        pending.keySet().retainAll(present);
+        for (Integer pid : attached.toArray(new Integer[0])) {
+            if (!present.contains(pid)) {
+                attached.remove(pid);
+                listener.detach(pid);
+            }
+        }
+    }
+
+    private static int pid(Path file) {
+        try {
+            return Integer.parseInt(file.getFileName().toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void created(Path file) {
+        int pid = pid(file);
+        if (pid > 0 && !attached.contains(pid)) {
+            pending.put(pid, System.currentTimeMillis());
+            probe(file, pid);
+        }
+    }
+
+    private void deleted(Path file) {
+        int pid = pid(file);
+        pending.remove(pid);
+        if (attached.remove(pid)) {
+            listener.detach(pid);
+        }
+    }
+
+    private void probe(Path file, int pid) {
+        Boolean publishes;
+        try {
+            publishes = PerfData.publishes(file, DataProvider.PREFIX);
+        } catch (IOException e) {
+            publishes = false;
+        }
+        if (publishes == null) {
+            return;
+        }
+        pending.remove(pid);
+        if (publishes && isAlive(pid)) {
+            attached.add(pid);
+            listener.attach(pid);
+        }
+    }
+
+    private void recheck() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Integer, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Long> e = it.next();
+            if (now - e.getValue() > PENDING_MS || !isAlive(e.getKey())) {
+                it.remove();
+            }
+        }
+        for (Integer pid : pending.keySet().toArray(new Integer[0])) {
+            for (Path dir : dirs.values()) {
+                Path f = dir.resolve(String.valueOf(pid));
+                if (Files.exists(f)) {
+                    probe(f, pid);
+                    break;
+                }
+            }
+        }
+        for (Integer pid : attached.toArray(new Integer[0])) {
+            if (!isAlive(pid)) {
+                attached.remove(pid);
+                listener.detach(pid);
+            }
+        }
+    }
+
+    private static boolean isAlive(int pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watcher.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.openjdk.shenandoah;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes recording frames back into snapshots. Snapshots are chained, so
+ * each one carries its delta against the previously decoded frame.
+ */
+public class FrameDecoder {
+
+    private final long regionSize;
+    private final long[] words;
+    private Snapshot last;
+
+    public FrameDecoder(int regionCount, long regionSize) {
+        this.regionSize = regionSize;
+        this.words = new long[regionCount];
+    }
+
+    /**
+     * Forgets the decoded state; the next frame must be a key frame.
+     */
+    public void reset() {
+        last = null;
+    }
+
+    /**
+     * @return last decoded snapshot, or null
+     */
+    public Snapshot last() {
+        return last;
+    }
+
+    /**
+     * Decodes one complete frame from the buffer.
+     *
+     * @return decoded snapshot, or null if the frame carries no region data
+     */
+    public Snapshot decode(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        int length = in.getInt();
+        int end = in.position() + length;
+        long time = in.getLong();
+        int status = in.getInt();
+
+        switch (type) {
+            case RecordingFormat.KEY:
+                for (int r = 0; r < words.length; r++) {
+                    words[r] = in.getLong();
+                }
+                break;
+            case RecordingFormat.DELTA: {
+                if (last == null) {
+                    throw new IOException("Delta frame without a preceding key frame");
+                }
+                int runs = RecordingFormat.getVarint(in);
+                int r = 0;
+                for (int run = 0; run < runs; run++) {
+                    r += RecordingFormat.getVarint(in);
+                    int count = RecordingFormat.getVarint(in);
+                    for (int c = 0; c < count; c++) {
+                        words[r++] = in.getLong();
+                    }
+                }
+                break;
+            }
+            case RecordingFormat.INDEX:
+                in.position(end);
+                return null;
+            default:
+                throw new IOException("Unknown frame type: " + type);
+        }
+        in.position(end);
+
+        last = (last == null) ?
+                new Snapshot(time, regionSize, words.clone(), null, status) :
+                new Snapshot(last, time, words, null, status);
+        return last;
+    }
+
+    /**
+     * @return declared length of the frame at the buffer position, which must hold its header
+     * @throws IOException if the length is too short for the time and status of a frame
+     */
+    public static int length(ByteBuffer in) throws IOException {
+        int length = in.getInt(in.position() + 1);
+        if (length < RecordingFormat.FRAME_PREFIX_SIZE) {
+            throw new IOException("Bad frame length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * @return true if the buffer holds at least one complete frame
+     * @throws IOException if the next frame has a bad length
+     */
+    public static boolean hasFrame(ByteBuffer in) throws IOException {
+        if (in.remaining() < RecordingFormat.FRAME_HEADER_SIZE) {
+            return false;
+        }
+        return in.remaining() - RecordingFormat.FRAME_HEADER_SIZE >= length(in);
+    }
+
+}
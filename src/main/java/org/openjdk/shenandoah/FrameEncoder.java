@@ -0,0 +1,123 @@
+package org.openjdk.shenandoah;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes consecutive snapshots into recording frames. Regions that did not
+ * change since the previous frame are run-length encoded away; a key frame
+ * is written periodically, and whenever a delta would not be smaller.
+ */
+public class FrameEncoder {
+
+    public static final int KEY_INTERVAL = 256;
+
+    private final int regionCount;
+    private long[] prev;
+    private int sinceKey;
+
+    public FrameEncoder(int regionCount) {
+        this.regionCount = regionCount;
+    }
+
+    /**
+     * Makes the next frame a key frame.
+     */
+    public void reset() {
+        prev = null;
+    }
+
+    /**
+     * Appends one frame to the buffer, which must have at least
+     * {@link RecordingFormat#maxFrameSize(int)} bytes remaining.
+     *
+     * @return true if a key frame was written
+     */
+    public boolean encode(Snapshot s, ByteBuffer out) {
+        long[] cur = s.data();
+        if (cur.length != regionCount) {
+            throw new IllegalArgumentException("Expected " + regionCount + " regions, got " + cur.length);
+        }
+
+        int start = out.position();
+        int[] changed = null;
+        boolean key = (prev == null || sinceKey >= KEY_INTERVAL);
+        if (!key) {
+            changed = SnapshotDelta.diff(prev, cur);
+            key = deltaSize(changed) >= regionCount * 8;
+        }
+
+        out.put(key ? RecordingFormat.KEY : RecordingFormat.DELTA);
+        out.putInt(0); // length, patched below
+        out.putLong(s.time());
+        out.putInt(s.status());
+
+        if (key) {
+            for (long w : cur) {
+                out.putLong(w);
+            }
+            sinceKey = 0;
+        } else {
+            RecordingFormat.putVarint(out, runs(changed));
+            int last = 0;
+            int i = 0;
+            while (i < changed.length) {
+                int j = i + 1;
+                while (j < changed.length && changed[j] == changed[j - 1] + 1) {
+                    j++;
+                }
+                RecordingFormat.putVarint(out, changed[i] - last);
+                RecordingFormat.putVarint(out, j - i);
+                for (int r = changed[i]; r <= changed[j - 1]; r++) {
+                    out.putLong(cur[r]);
+                }
+                last = changed[j - 1] + 1;
+                i = j;
+            }
+            sinceKey++;
+        }
+
+        out.putInt(start + 1, out.position() - start - RecordingFormat.FRAME_HEADER_SIZE);
+        prev = cur;
+        return key;
+    }
+
+    /**
+     * Writes the INDEX frame for the given key frames.
+     *
+     * @param offset file offset the INDEX frame will be written at
+     * @return buffer holding the frame, ready to be written
+     */
+    public static ByteBuffer encodeIndex(long[] times, long[] offsets, int count, long lastTime, long offset) {
+        int length = RecordingFormat.FRAME_PREFIX_SIZE + 4 + count * 16 + RecordingFormat.TRAILER_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(RecordingFormat.FRAME_HEADER_SIZE + length).order(RecordingFormat.ORDER);
+        out.put(RecordingFormat.INDEX);
+        out.putInt(length);
+        out.putLong(lastTime);
+        out.putInt(0);
+        out.putInt(count);
+        for (int i = 0; i < count; i++) {
+            out.putLong(times[i]);
+            out.putLong(offsets[i]);
+        }
+        out.putLong(offset);
+        out.putInt(RecordingFormat.MAGIC);
+        out.flip();
+        return out;
+    }
+
+    private static int runs(int[] changed) {
+        int runs = 0;
+        for (int i = 0; i < changed.length; i++) {
+            if (i == 0 || changed[i] != changed[i - 1] + 1) {
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    private static int deltaSize(int[] changed) {
+        // Upper bound: every run header takes at most 10 bytes
+        return 5 + runs(changed) * 10 + changed.length * 8;
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.openjdk.shenandoah;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rendered frames as a numbered PNG sequence, {@code frame-000000.png}
+ * and on, encoding them on a small pool of threads.
+ *
+ * Frames are painted into images taken from a fixed set of buffers, which
+ * return to the set once encoded. When encoding falls behind and no buffer is
+ * free, {@link #acquire()} returns null and the frame is dropped, so neither
+ * the renderer nor the sampler ever waits, and memory stays bounded.
+ *
+ * The numbered sequence has no gaps, so it plays too fast after drops. The
+ * {@link #FRAME_LIST} next to it keeps the timing: every frame lasts from the
+ * tick it was acquired on to that of the next frame written, for
+ * {@code ffmpeg -f concat -i frames.ffconcat out.mp4}.
+ */
+public class FrameExporter implements Closeable {
+
+    public static final int MAX_ENCODERS = 4;
+    public static final String FRAME_LIST = "frames.ffconcat";
+
+    private final Path dir;
+    private final int fps;
+    private final BlockingQueue<BufferedImage> free;
+    private final ExecutorService encoders;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private long submitted;
+
+    // Frame list, written by the submitting thread; ticks count acquired and dropped frames
+    private final Writer list;
+    private final Map<BufferedImage, Long> acquiredAt = new IdentityHashMap<>();
+    private IOException listError;
+    private long ticks;
+    private String lastFile;
+    private long lastTick;
+
+    public FrameExporter(Path dir, int width, int height, int fps) throws IOException {
+        this(dir, width, height, fps, Math.max(1, Math.min(MAX_ENCODERS, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    public FrameExporter(Path dir, int width, int height, int fps, int threads) throws IOException {
+        this.dir = dir;
+        this.fps = fps;
+        this.list = Files.newBufferedWriter(dir.resolve(FRAME_LIST));
+        list.write("ffconcat version 1.0\n");
+        int buffers = 2 * threads;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        }
+        this.encoders = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Frame encoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return image to paint the next frame into, or null to drop the frame
+     */
+    public BufferedImage acquire() {
+        BufferedImage img = free.poll();
+        if (img == null) {
+            dropped.incrementAndGet();
+            ticks++;
+            return null;
+        }
+        acquiredAt.put(img, ticks++);
+        return img;
+    }
+
+    /**
+     * Waits for a free image, for exports that must not drop frames.
+     */
+    public BufferedImage take() throws InterruptedException {
+        BufferedImage img = free.take();
+        acquiredAt.put(img, ticks++);
+        return img;
+    }
+
+    /**
+     * Queues the painted image for encoding. Called from the thread that
+     * acquires images, in the order they were acquired.
+     */
+    public void submit(BufferedImage img) {
+        long tick = acquiredAt.remove(img);
+        listLast(tick);
+        lastFile = String.format("frame-%06d.png", submitted++);
+        lastTick = tick;
+        Path file = dir.resolve(lastFile);
+        encoders.execute(() -> {
+            try {
+                ImageIO.write(img, "png", file.toFile());
+                written.incrementAndGet();
+            } catch (IOException e) {
+                if (failed.getAndIncrement() == 0) {
+                    System.err.println("Cannot write " + file + ": " + e.getMessage());
+                }
+            } finally {
+                free.add(img);
+            }
+        });
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Lists the last submitted frame, lasting until the given tick.
+     */
+    private void listLast(long until) {
+        if (lastFile == null) {
+            return;
+        }
+        try {
+            list.write("file '" + lastFile + "'\n");
+            list.write(String.format(Locale.ROOT, "duration %.6f\n", 1D * (until - lastTick) / fps));
+        } catch (IOException e) {
+            if (listError == null) {
+                listError = e;
+            }
+        }
+    }
+
+    /**
+     * Waits for the queued frames to be written, and completes the frame list.
+     */
+    @Override
+    public void close() throws IOException {
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        listLast(ticks);
+        try {
+            // The concat demuxer ignores the duration of the last entry unless it is repeated
+            if (lastFile != null) {
+                list.write("file '" + lastFile + "'\n");
+            }
+            list.close();
+        } catch (IOException e) {
+            if (listError == null) {
+                listError = e;
+            }
+        }
+        if (failed.get() > 0) {
+            throw new IOException("Failed to write " + failed.get() + " frames to " + dir);
+        }
+        if (listError != null) {
+            throw listError;
+        }
+    }
+
+}
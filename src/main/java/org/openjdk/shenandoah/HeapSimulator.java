@@ -0,0 +1,518 @@
+package org.openjdk.shenandoah;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic Shenandoah heap, for trying the visualizer at any scale without
+ * a live JVM. Every {@link #snapshot()} advances the simulation by one step,
+ * and the same options and seed always produce the same sequence of samples.
+ *
+ * Mutators allocate into regular regions from the bottom of the heap, some
+ * of it as humongous runs, while objects die over time. Once free regions run
+ * low, a cycle marks, picks the regions with the least live data as the
+ * collection set, evacuates them into regions at the top of the heap, updates
+ * references, and trashes the evacuated regions, which are then recycled.
+ * Pinned regions stay in place through the cycle, dead humongous runs are
+ * reclaimed right after marking, and regions that stay empty are uncommitted.
+ *
+ * Options are given as {@code key=value} pairs separated by commas, e.g.
+ * {@code sim://regions=32768,connections=8}; see {@link #OPTIONS}.
+ */
+public class HeapSimulator implements SnapshotSource {
+
+    /**
+     * Option names, their defaults, and meaning.
+     */
+    public static final String[][] OPTIONS = {
+            { "regions",     "2048", "number of regions" },
+            { "size",        "1024", "region size, KB" },
+            { "seed",        "1",    "random seed" },
+            { "step",        "100",  "simulated time per sample, ms" },
+            { "alloc",       "20",   "allocation rate, % of the heap per second" },
+            { "humongous",   "5",    "share of allocations that are humongous, %" },
+            { "live",        "30",   "share of allocated data that survives a cycle, %" },
+            { "pinned",      "1",    "share of regions pinned at a time, %" },
+            { "trigger",     "30",   "free regions that start a cycle, %" },
+            { "cycle",       "2000", "duration of a cycle, ms" },
+            { "uncommit",    "5000", "delay before empty regions are uncommitted, ms" },
+            { "connections", "0",    "connections per region in the matrix, 0 for none" },
+    };
+
+    private static final int FULL = 100;
+    private static final int MAX_HUMONGOUS = 16;
+    private static final int LOCALITY = 64;
+
+    private final int regions;
+    private final long regionSize;
+    private final int stepMs;
+    private final double allocPerStep;
+    private final int humongousRate;
+    private final int liveRate;
+    private final int maxPinned;
+    private final int triggerFree;
+    private final int markSteps, evacSteps, updateSteps;
+    private final int uncommitSteps;
+    private final int connections;
+    private final long seed;
+
+    private final Random r;
+    private final RegionState[] states;
+    private final int[] used, live, tlab, gclab, shared;
+    private final int[] humongousRun;
+    private final long[] emptySince;
+    private final BitSet free = new BitSet();
+    private final long[] words;
+
+    // Connection matrix rows in the JVM encoding, re-decoded when dirty
+    private final byte[][] rows;
+    private final BitSet dirtyRows = new BitSet();
+    private final ConnectionMatrix.Decoder decoder;
+
+    private final long start;
+    private long step;
+    private double allocDebt;
+    private double humongousDebt;
+    private int nextHumongous;
+    private int mutatorRegion = -1;
+    private int gcRegion = -1;
+    private int pinned;
+
+    private Phase phase = Phase.IDLE;
+    private int phaseLeft;
+    private int cycles;
+    private int[] cset = new int[0];
+    private int evacuated;
+
+    private Snapshot last;
+
+    public HeapSimulator(String options) {
+        Map<String, String> o = parse(options);
+        regions = option(o, "regions", 1);
+        regionSize = option(o, "size", 1);
+        seed = option(o, "seed", Integer.MIN_VALUE);
+        stepMs = option(o, "step", 1);
+        int alloc = option(o, "alloc", 0);
+        humongousRate = Math.min(FULL, option(o, "humongous", 0));
+        liveRate = Math.min(FULL, option(o, "live", 0));
+        int pinnedRate = Math.min(FULL, option(o, "pinned", 0));
+        triggerFree = regions * Math.min(FULL, option(o, "trigger", 0)) / FULL;
+        int cycleMs = option(o, "cycle", 1);
+        uncommitSteps = Math.max(1, option(o, "uncommit", 0) / stepMs);
+        connections = option(o, "connections", 0);
+
+        // In percents of a region
+        allocPerStep = 1D * regions * alloc * stepMs / 1000;
+        maxPinned = regions * pinnedRate / FULL;
+        markSteps = Math.max(1, cycleMs * 4 / 10 / stepMs);
+        evacSteps = Math.max(1, cycleMs * 3 / 10 / stepMs);
+        updateSteps = Math.max(1, cycleMs * 3 / 10 / stepMs);
+
+        r = new Random(seed);
+        states = new RegionState[regions];
+        used = new int[regions];
+        live = new int[regions];
+        tlab = new int[regions];
+        gclab = new int[regions];
+        shared = new int[regions];
+        humongousRun = new int[regions];
+        emptySince = new long[regions];
+        words = new long[regions];
+        Arrays.fill(states, RegionState.EMPTY_UNCOMMITTED);
+        free.set(0, regions);
+
+        if (connections > 0) {
+            rows = new byte[regions][(regions + 5) / 6];
+            for (byte[] row : rows) {
+                Arrays.fill(row, (byte) 32);
+            }
+            dirtyRows.set(0, regions);
+            decoder = new ConnectionMatrix.Decoder(regions);
+        } else {
+            rows = null;
+            decoder = null;
+        }
+        start = System.currentTimeMillis();
+    }
+
+    private static Map<String, String> parse(String options) {
+        Map<String, String> o = new HashMap<>();
+        for (String[] opt : OPTIONS) {
+            o.put(opt[0], opt[1]);
+        }
+        Map<String, String> unknown = new HashMap<>();
+        for (String kv : options.split(",")) {
+            if (kv.isEmpty()) {
+                continue;
+            }
+            int eq = kv.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Simulator option is not key=value: " + kv);
+            }
+            String key = kv.substring(0, eq);
+            (o.containsKey(key) ? o : unknown).put(key, kv.substring(eq + 1));
+        }
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown simulator options: " + unknown.keySet());
+        }
+        return o;
+    }
+
+    private static int option(Map<String, String> o, String key, int min) {
+        String v = o.remove(key);
+        int value;
+        try {
+            value = Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Simulator option " + key + " is not a number: " + v);
+        }
+        if (value < min) {
+            throw new IllegalArgumentException("Simulator option " + key + " must be at least " + min + ": " + v);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized Snapshot snapshot() {
+        step();
+
+        for (int i = 0; i < regions; i++) {
+            words[i] = RegionStat.pack(used[i] / 100F, live[i] / 100F,
+                    tlab[i] / 100F, gclab[i] / 100F, shared[i] / 100F, states[i]);
+        }
+        ConnectionMatrix matrix = null;
+        if (decoder != null) {
+            for (int f = dirtyRows.nextSetBit(0); f >= 0; f = dirtyRows.nextSetBit(f + 1)) {
+                decoder.row(f, rows[f], rows[f].length);
+            }
+            dirtyRows.clear();
+            matrix = decoder.finish();
+        }
+
+        long time = start + step * stepMs;
+        last = (last == null) ?
+                new Snapshot(time, regionSize, words.clone(), matrix, statusFlags()) :
+                new Snapshot(last, time, words, matrix, statusFlags());
+        return last;
+    }
+
+    private int statusFlags() {
+        switch (phase) {
+            case MARKING:
+                return 0x1;
+            case EVACUATING:
+                return 0x2;
+            case UPDATE_REFS:
+                return 0x4;
+            default:
+                return 0x0;
+        }
+    }
+
+    private void step() {
+        step++;
+        recycle();
+        die();
+        pin();
+        allocate();
+
+        switch (phase) {
+            case IDLE:
+                if (free.cardinality() < triggerFree) {
+                    enter(Phase.MARKING, markSteps);
+                }
+                break;
+            case MARKING:
+                if (--phaseLeft == 0) {
+                    reclaimHumongous();
+                    selectCollectionSet();
+                    enter(Phase.EVACUATING, evacSteps);
+                }
+                break;
+            case EVACUATING:
+                evacuate(phaseLeft);
+                if (--phaseLeft == 0) {
+                    enter(Phase.UPDATE_REFS, updateSteps);
+                }
+                break;
+            case UPDATE_REFS:
+                if (--phaseLeft == 0) {
+                    trashCollectionSet();
+                    cycles++;
+                    enter(Phase.IDLE, 0);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected phase: " + phase);
+        }
+    }
+
+    private void enter(Phase p, int steps) {
+        phase = p;
+        phaseLeft = steps;
+    }
+
+    /**
+     * Frees trashed regions, and uncommits regions that stayed empty for long.
+     */
+    private void recycle() {
+        for (int i = 0; i < regions; i++) {
+            if (states[i] == RegionState.TRASH) {
+                release(i);
+            } else if (states[i] == RegionState.EMPTY_COMMITTED && step - emptySince[i] >= uncommitSteps) {
+                states[i] = RegionState.EMPTY_UNCOMMITTED;
+            }
+        }
+    }
+
+    /**
+     * Objects die over time; humongous objects die as a whole.
+     */
+    private void die() {
+        for (int i = 0; i < regions; i++) {
+            if (live[i] == 0 || r.nextInt(FULL) >= 5) {
+                continue;
+            }
+            switch (states[i]) {
+                case REGULAR:
+                case PINNED:
+                    live[i] = live[i] * (50 + r.nextInt(50)) / FULL;
+                    break;
+                case HUMONGOUS:
+                case PINNED_HUMONGOUS:
+                    if (humongousRun[i] > 0 && r.nextInt(FULL) < 10) {
+                        for (int h = i; h < i + humongousRun[i]; h++) {
+                            live[h] = 0;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void pin() {
+        if (pinned < maxPinned && r.nextInt(FULL) < 20) {
+            int i = r.nextInt(regions);
+            if (states[i] == RegionState.REGULAR && i != mutatorRegion && i != gcRegion) {
+                states[i] = RegionState.PINNED;
+                pinned++;
+            } else if (states[i] == RegionState.HUMONGOUS && humongousRun[i] > 0) {
+                for (int h = i; h < i + humongousRun[i]; h++) {
+                    states[h] = RegionState.PINNED_HUMONGOUS;
+                }
+                pinned++;
+            }
+        }
+        if (pinned > 0 && r.nextInt(FULL) < 10) {
+            int i = r.nextInt(regions);
+            if (states[i] == RegionState.PINNED) {
+                states[i] = RegionState.REGULAR;
+                pinned--;
+            } else if (states[i] == RegionState.PINNED_HUMONGOUS && humongousRun[i] > 0) {
+                for (int h = i; h < i + humongousRun[i]; h++) {
+                    states[h] = RegionState.HUMONGOUS;
+                }
+                pinned--;
+            }
+        }
+    }
+
+    private void allocate() {
+        humongousDebt += allocPerStep * humongousRate / FULL;
+        allocDebt += allocPerStep * (FULL - humongousRate) / FULL;
+        while (humongousDebt >= nextHumongous * FULL) {
+            if (nextHumongous > 0 && !allocateHumongous(nextHumongous)) {
+                humongousDebt = 0;
+                break;
+            }
+            humongousDebt -= nextHumongous * FULL;
+            nextHumongous = 2 + r.nextInt(MAX_HUMONGOUS - 1);
+        }
+        while (allocDebt >= 1) {
+            if (mutatorRegion < 0 || used[mutatorRegion] == FULL) {
+                mutatorRegion = take(false);
+                if (mutatorRegion < 0) {
+                    // Out of memory: drop the rest, the cycle catches up
+                    allocDebt = 0;
+                    break;
+                }
+            }
+            int i = mutatorRegion;
+            int size = (int) Math.min(Math.min(allocDebt, FULL - used[i]), 1 + r.nextInt(25));
+            int inTlab = size * (70 + r.nextInt(30)) / FULL;
+            used[i] += size;
+            tlab[i] += inTlab;
+            shared[i] += size - inTlab;
+            live[i] = Math.min(used[i], live[i] + survivors(size));
+            allocDebt -= size;
+        }
+    }
+
+    private int survivors(int size) {
+        return (size * (liveRate + r.nextInt(21) - 10) + FULL / 2) / FULL;
+    }
+
+    private boolean allocateHumongous(int n) {
+        int from = free.nextSetBit(0);
+        while (from >= 0) {
+            int to = free.nextClearBit(from);
+            if (to - from >= n) {
+                boolean alive = r.nextInt(FULL) < Math.max(liveRate, 1) * 2;
+                for (int h = from; h < from + n; h++) {
+                    commit(h, RegionState.HUMONGOUS);
+                    used[h] = (h == from + n - 1) ? 1 + r.nextInt(FULL) : FULL;
+                    shared[h] = used[h];
+                    live[h] = alive ? used[h] : 0;
+                }
+                humongousRun[from] = n;
+                connect(from);
+                return true;
+            }
+            from = free.nextSetBit(to);
+        }
+        return false;
+    }
+
+    /**
+     * Takes a free region: mutators allocate from the bottom, GC from the top.
+     */
+    private int take(boolean gc) {
+        int i = gc ? free.previousSetBit(regions - 1) : free.nextSetBit(0);
+        if (i >= 0) {
+            commit(i, RegionState.REGULAR);
+            connect(i);
+        }
+        return i;
+    }
+
+    private void commit(int i, RegionState state) {
+        free.clear(i);
+        states[i] = state;
+    }
+
+    private void release(int i) {
+        states[i] = RegionState.EMPTY_COMMITTED;
+        used[i] = live[i] = tlab[i] = gclab[i] = shared[i] = 0;
+        humongousRun[i] = 0;
+        emptySince[i] = step;
+        free.set(i);
+        if (rows != null) {
+            Arrays.fill(rows[i], (byte) 32);
+            dirtyRows.set(i);
+        }
+    }
+
+    /**
+     * Connects a newly used region to other regions, mostly nearby ones.
+     */
+    private void connect(int from) {
+        if (rows == null) {
+            return;
+        }
+        byte[] row = rows[from];
+        Arrays.fill(row, (byte) 32);
+        for (int k = 0; k < connections; k++) {
+            int to = (r.nextInt(FULL) < 80) ?
+                    Math.floorMod(from + (int) (r.nextGaussian() * LOCALITY), regions) :
+                    r.nextInt(regions);
+            row[to / 6] = (byte) (((row[to / 6] - 32) | (1 << (to % 6))) + 32);
+        }
+        dirtyRows.set(from);
+    }
+
+    private void reclaimHumongous() {
+        for (int i = 0; i < regions; i++) {
+            if (states[i] == RegionState.HUMONGOUS && humongousRun[i] > 0 && live[i] == 0) {
+                int n = humongousRun[i];
+                for (int h = i; h < i + n; h++) {
+                    states[h] = RegionState.TRASH;
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the regions with the least live data, as long as their live data fits into free regions.
+     */
+    private void selectCollectionSet() {
+        long[] candidates = new long[regions];
+        int count = 0;
+        for (int i = 0; i < regions; i++) {
+            boolean regular = states[i] == RegionState.REGULAR || states[i] == RegionState.PINNED;
+            if (regular && i != mutatorRegion && i != gcRegion && live[i] * 10 < used[i] * 6) {
+                candidates[count++] = ((long) live[i] << 32) | i;
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+
+        long budget = (long) free.cardinality() * FULL * 3 / 4;
+        int n = 0;
+        for (; n < count; n++) {
+            budget -= candidates[n] >>> 32;
+            if (budget < 0) {
+                break;
+            }
+        }
+        cset = new int[n];
+        for (int c = 0; c < n; c++) {
+            int i = (int) candidates[c];
+            cset[c] = i;
+            states[i] = (states[i] == RegionState.PINNED) ? RegionState.PINNED_CSET : RegionState.CSET;
+        }
+        evacuated = 0;
+    }
+
+    /**
+     * Evacuates an even share of the remaining collection set; pinned regions stay.
+     */
+    private void evacuate(int stepsLeft) {
+        int target = evacuated + (cset.length - evacuated + stepsLeft - 1) / stepsLeft;
+        for (; evacuated < target; evacuated++) {
+            int i = cset[evacuated];
+            if (states[i] != RegionState.CSET) {
+                continue;
+            }
+            int remaining = live[i];
+            while (remaining > 0) {
+                if (gcRegion < 0 || used[gcRegion] == FULL) {
+                    gcRegion = take(true);
+                    if (gcRegion < 0) {
+                        // Evacuation failure: the region stays where it is
+                        states[i] = RegionState.REGULAR;
+                        return;
+                    }
+                }
+                int g = gcRegion;
+                int size = Math.min(remaining, FULL - used[g]);
+                used[g] += size;
+                gclab[g] += size;
+                live[g] += size;
+                remaining -= size;
+            }
+        }
+    }
+
+    private void trashCollectionSet() {
+        for (int i : cset) {
+            if (states[i] == RegionState.CSET) {
+                states[i] = RegionState.TRASH;
+                live[i] = 0;
+            } else if (states[i] == RegionState.PINNED_CSET) {
+                states[i] = RegionState.PINNED;
+            }
+        }
+        cset = new int[0];
+        gcRegion = -1;
+    }
+
+    @Override
+    public synchronized String status() {
+        return "Simulator: seed " + seed + ", cycle " + (cycles + 1) + ", " + free.cardinality() + " regions free";
+    }
+
+}
@@ -0,0 +1,262 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Region recording opened for random access. The file is memory-mapped in
+ * chunks that overlap by one maximal frame, so every frame lies entirely
+ * within the chunk its offset falls into, and files larger than 2 GB work.
+ * Chunks are only mapped when first touched, and the OS pages them in lazily.
+ *
+ * Seeking goes through the key frame index at the end of a cleanly closed
+ * recording. The index grows with the recording and can be larger than the
+ * overlap, so it is read from the channel instead of the chunks. Recordings
+ * without one, e.g. from a crashed recorder, are indexed by hopping over the
+ * frame headers once.
+ */
+public class MappedRecording implements Closeable {
+
+    private static final long CHUNK = 1L << 30;
+
+    private final FileChannel channel;
+    private final long chunkSize;
+    private final long size;
+    private final long dataEnd;
+    private final int regionCount;
+    private final long regionSize;
+    private final int overlap;
+    private final MappedByteBuffer[] chunks;
+
+    private final long[] keyTimes;
+    private final long[] keyOffsets;
+    private final long lastTime;
+    private final boolean indexed;
+
+    public MappedRecording(Path file) throws IOException {
+        this(file, CHUNK);
+    }
+
+    /**
+     * Opens the recording with chunks of the given size, so tests can cross
+     * chunk boundaries without gigabytes of data.
+     */
+    MappedRecording(Path file, long chunkSize) throws IOException {
+        this.chunkSize = chunkSize;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RecordingFormat.HEADER_SIZE).order(RecordingFormat.ORDER);
+            channel.read(header, 0);
+            header.flip();
+            long[] h = RecordingFormat.readHeader(header);
+            regionCount = (int) h[0];
+            regionSize = h[1];
+            overlap = RecordingFormat.maxFrameSize(regionCount);
+            chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+
+            long indexOffset = findIndex();
+            indexed = indexOffset >= 0;
+            if (indexOffset >= 0) {
+                ByteBuffer in = read(indexOffset, (int) (size - indexOffset));
+                in.get();
+                in.getInt();
+                lastTime = in.getLong();
+                in.getInt();
+                int count = in.getInt();
+                keyTimes = new long[count];
+                keyOffsets = new long[count];
+                for (int i = 0; i < count; i++) {
+                    keyTimes[i] = in.getLong();
+                    keyOffsets[i] = in.getLong();
+                }
+                dataEnd = indexOffset;
+            } else {
+                long[][] scanned = new long[2][];
+                long[] end = new long[2];
+                scan(scanned, end);
+                keyTimes = scanned[0];
+                keyOffsets = scanned[1];
+                dataEnd = end[0];
+                lastTime = end[1];
+            }
+            if (keyTimes.length == 0) {
+                throw new IOException("Recording has no frames");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private long findIndex() throws IOException {
+        if (size < RecordingFormat.HEADER_SIZE + RecordingFormat.TRAILER_SIZE) {
+            return -1;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(RecordingFormat.TRAILER_SIZE).order(RecordingFormat.ORDER);
+        channel.read(trailer, size - RecordingFormat.TRAILER_SIZE);
+        trailer.flip();
+        long offset = trailer.getLong();
+        int magic = trailer.getInt();
+        if (magic != RecordingFormat.MAGIC || offset < RecordingFormat.HEADER_SIZE ||
+                offset > size - RecordingFormat.FRAME_HEADER_SIZE) {
+            return -1;
+        }
+
+        // The index is the last frame, and its length matches the key frame count
+        ByteBuffer header = read(offset, RecordingFormat.FRAME_HEADER_SIZE + RecordingFormat.FRAME_PREFIX_SIZE + 4);
+        if (header.remaining() < RecordingFormat.FRAME_HEADER_SIZE + RecordingFormat.FRAME_PREFIX_SIZE + 4 ||
+                header.get() != RecordingFormat.INDEX) {
+            return -1;
+        }
+        int length = header.getInt();
+        header.getLong();
+        header.getInt();
+        int count = header.getInt();
+        long expected = RecordingFormat.FRAME_PREFIX_SIZE + 4 + 16L * count + RecordingFormat.TRAILER_SIZE;
+        if (count < 0 || length != expected || offset + RecordingFormat.FRAME_HEADER_SIZE + length != size) {
+            return -1;
+        }
+        return offset;
+    }
+
+    /**
+     * @return buffer with up to {@code length} bytes of the file from the given offset
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(RecordingFormat.ORDER);
+        while (buf.hasRemaining() && channel.read(buf, offset + buf.position()) >= 0);
+        buf.flip();
+        return buf;
+    }
+
+    private void scan(long[][] keys, long[] end) throws IOException {
+        long[] times = new long[64];
+        long[] offsets = new long[64];
+        int count = 0;
+        long last = 0;
+        long offset = RecordingFormat.HEADER_SIZE;
+        while (offset + RecordingFormat.FRAME_HEADER_SIZE + RecordingFormat.FRAME_PREFIX_SIZE <= size) {
+            ByteBuffer in = frameAt(offset);
+            byte type = in.get();
+            int length = in.getInt();
+            long next = offset + RecordingFormat.FRAME_HEADER_SIZE + length;
+            if (next > size) {
+                break;
+            }
+            long time = in.getLong();
+            if (type == RecordingFormat.KEY) {
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                times[count] = time;
+                offsets[count] = offset;
+                count++;
+            }
+            if (type == RecordingFormat.KEY || type == RecordingFormat.DELTA) {
+                last = time;
+            }
+            offset = next;
+        }
+        keys[0] = Arrays.copyOf(times, count);
+        keys[1] = Arrays.copyOf(offsets, count);
+        end[0] = offset;
+        end[1] = last;
+    }
+
+    /**
+     * @return buffer positioned at the frame starting at the given file offset
+     */
+    public ByteBuffer frameAt(long offset) throws IOException {
+        int c = (int) (offset / chunkSize);
+        MappedByteBuffer chunk = chunks[c];
+        if (chunk == null) {
+            long start = c * chunkSize;
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, chunkSize + overlap));
+            chunks[c] = chunk;
+        }
+        ByteBuffer b = chunk.duplicate().order(RecordingFormat.ORDER);
+        b.position((int) (offset - c * chunkSize));
+        return b;
+    }
+
+    /**
+     * @return offset of the frame that follows the one at the given offset
+     */
+    public long nextFrame(long offset) throws IOException {
+        return offset + RecordingFormat.FRAME_HEADER_SIZE + frameAt(offset).getInt((int) (offset % chunkSize) + 1);
+    }
+
+    /**
+     * @return time of the frame at the given offset
+     */
+    public long frameTime(long offset) throws IOException {
+        return frameAt(offset).getLong((int) (offset % chunkSize) + RecordingFormat.FRAME_HEADER_SIZE);
+    }
+
+    /**
+     * @return true if a complete frame with region data starts at the offset
+     */
+    public boolean hasFrame(long offset) {
+        return offset < dataEnd;
+    }
+
+    /**
+     * @return index of the last key frame at or before the given time, or 0
+     */
+    public int keyFrameBefore(long time) {
+        int idx = Arrays.binarySearch(keyTimes, time);
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        return Math.max(0, idx);
+    }
+
+    public int keyFrames() {
+        return keyTimes.length;
+    }
+
+    public long keyFrameTime(int idx) {
+        return keyTimes[idx];
+    }
+
+    public long keyFrameOffset(int idx) {
+        return keyOffsets[idx];
+    }
+
+    public long firstTime() {
+        return keyTimes[0];
+    }
+
+    public long lastTime() {
+        return lastTime;
+    }
+
+    /**
+     * @return true if the key frames came from the index, false if the file was scanned
+     */
+    public boolean indexed() {
+        return indexed;
+    }
+
+    public int regionCount() {
+        return regionCount;
+    }
+
+    public long regionSize() {
+        return regionSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
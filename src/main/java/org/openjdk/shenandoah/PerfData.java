@@ -0,0 +1,262 @@
+package org.openjdk.shenandoah;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Read-only view of the hsperfdata file published by a local JVM.
+ *
+ * The file is mapped once and stays shared with the target JVM, so the values at
+ * resolved offsets are always current. Only the prologue and the entry directory
+ * are parsed; values are read straight from the mapping with absolute gets.
+ */
+public class PerfData implements AutoCloseable {
+
+    private static final int MAGIC = 0xcafec0c0;
+
+    private static final int PROLOGUE_BYTE_ORDER   = 4;
+    private static final int PROLOGUE_ACCESSIBLE   = 7;
+    private static final int PROLOGUE_ENTRY_OFFSET = 24;
+    private static final int PROLOGUE_NUM_ENTRIES  = 28;
+
+    private static final int ENTRY_LENGTH        = 0;
+    private static final int ENTRY_NAME_OFFSET   = 4;
+    private static final int ENTRY_VECTOR_LENGTH = 8;
+    private static final int ENTRY_DATA_TYPE     = 12;
+    private static final int ENTRY_DATA_OFFSET   = 16;
+
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_BYTE = 'B';
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final Map<String, Integer> longs;
+    private final Map<String, Integer> strings;
+    private final Map<String, Integer> stringLengths;
+
+    private PerfData(FileChannel channel, MappedByteBuffer buf) {
+        this.channel = channel;
+        this.buf = buf;
+        this.longs = new HashMap<>();
+        this.strings = new HashMap<>();
+        this.stringLengths = new HashMap<>();
+
+        // Magic is always stored big-endian, the rest follows the recorded byte order
+        buf.order(ByteOrder.BIG_ENDIAN);
+        if (buf.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a hsperfdata file");
+        }
+        buf.order(buf.get(PROLOGUE_BYTE_ORDER) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+        int entry = buf.getInt(PROLOGUE_ENTRY_OFFSET);
+        int count = buf.getInt(PROLOGUE_NUM_ENTRIES);
+        for (int e = 0; e < count; e++) {
+            int length = buf.getInt(entry + ENTRY_LENGTH);
+            if (length <= 0 || entry + length > buf.limit()) {
+                break;
+            }
+            String name = readString(entry + buf.getInt(entry + ENTRY_NAME_OFFSET), length);
+            int dataOffset = entry + buf.getInt(entry + ENTRY_DATA_OFFSET);
+            int vectorLength = buf.getInt(entry + ENTRY_VECTOR_LENGTH);
+            byte type = buf.get(entry + ENTRY_DATA_TYPE);
+            if (type == TYPE_LONG && vectorLength == 0) {
+                longs.put(name, dataOffset);
+            } else if (type == TYPE_BYTE && vectorLength > 0) {
+                strings.put(name, dataOffset);
+                stringLengths.put(name, vectorLength);
+            }
+            entry += length;
+        }
+    }
+
+    /**
+     * Maps the hsperfdata file of the local JVM with the given pid.
+     *
+     * @throws IOException if no readable hsperfdata file exists for that pid
+     */
+    public static PerfData attach(int pid) throws IOException {
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        File[] dirs = tmp.listFiles((dir, name) -> name.startsWith("hsperfdata_"));
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File f = new File(dir, String.valueOf(pid));
+                if (f.isFile() && f.canRead()) {
+                    return map(f.toPath());
+                }
+            }
+        }
+        throw new IOException("No hsperfdata file for pid " + pid + " in " + tmp);
+    }
+
+    public static PerfData map(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new PerfData(ch, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } catch (RuntimeException | IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether the hsperfdata file has any counter whose name starts with
+     * the prefix. Only the prologue and the entry names are looked at, and
+     * nothing is allocated per entry, so probing many files stays cheap.
+     *
+     * @return true if such a counter exists, false if it does not, or null if
+     *         the JVM has not finished initializing the file yet
+     * @throws IOException if the file cannot be read or is not a hsperfdata file
+     */
+    public static Boolean publishes(Path file, String prefix) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.BIG_ENDIAN);
+            if (buf.limit() < PROLOGUE_NUM_ENTRIES + 4 || buf.getInt(0) == 0) {
+                // Created, but not initialized yet
+                return null;
+            }
+            if (buf.getInt(0) != MAGIC) {
+                throw new IOException("Not a hsperfdata file: " + file);
+            }
+            if (buf.get(PROLOGUE_ACCESSIBLE) == 0) {
+                return null;
+            }
+            buf.order(buf.get(PROLOGUE_BYTE_ORDER) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+
+            byte[] p = prefix.getBytes(StandardCharsets.US_ASCII);
+            int entry = buf.getInt(PROLOGUE_ENTRY_OFFSET);
+            int count = buf.getInt(PROLOGUE_NUM_ENTRIES);
+            for (int e = 0; e < count; e++) {
+                if (entry + ENTRY_DATA_OFFSET + 4 > buf.limit()) {
+                    break;
+                }
+                int length = buf.getInt(entry + ENTRY_LENGTH);
+                if (length <= 0 || entry + length > buf.limit()) {
+                    break;
+                }
+                int name = entry + buf.getInt(entry + ENTRY_NAME_OFFSET);
+                if (name + p.length <= buf.limit()) {
+                    int i = 0;
+                    while (i < p.length && buf.get(name + i) == p[i]) {
+                        i++;
+                    }
+                    if (i == p.length) {
+                        return true;
+                    }
+                }
+                entry += length;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Visits every long counter whose name starts with the prefix, passing the
+     * name and the absolute offset of its value.
+     */
+    public void forEachLong(String prefix, ObjIntConsumer<String> visitor) {
+        forEach(longs, prefix, visitor);
+    }
+
+    /**
+     * Visits every string counter whose name starts with the prefix, passing the
+     * name and the absolute offset of its value.
+     */
+    public void forEachString(String prefix, ObjIntConsumer<String> visitor) {
+        forEach(strings, prefix, visitor);
+    }
+
+    private static void forEach(Map<String, Integer> map, String prefix, ObjIntConsumer<String> visitor) {
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            if (e.getKey().startsWith(prefix)) {
+                visitor.accept(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return absolute offset of the named long counter, or -1 if absent
+     */
+    public int longOffset(String name) {
+        Integer off = longs.get(name);
+        return (off == null) ? -1 : off;
+    }
+
+    /**
+     * @return absolute offset of the named string counter, or -1 if absent
+     */
+    public int stringOffset(String name) {
+        Integer off = strings.get(name);
+        return (off == null) ? -1 : off;
+    }
+
+    public int stringCapacity(String name) {
+        Integer len = stringLengths.get(name);
+        return (len == null) ? 0 : len;
+    }
+
+    public long getLong(int offset) {
+        return buf.getLong(offset);
+    }
+
+    /**
+     * Copies the longs at the given offsets into {@code dst}, without allocating.
+     */
+    public void getLongs(int[] offsets, long[] dst) {
+        MappedByteBuffer b = buf;
+        for (int i = 0; i < offsets.length; i++) {
+            dst[i] = b.getLong(offsets[i]);
+        }
+    }
+
+    /**
+     * Reads the NUL-terminated string stored at the given offset.
+     */
+    public String getString(int offset, int capacity) {
+        return readString(offset, capacity);
+    }
+
+    /**
+     * Copies the NUL-terminated bytes stored at the given offset, without allocating.
+     *
+     * @return number of bytes copied
+     */
+    public int getBytes(int offset, int capacity, byte[] dst) {
+        MappedByteBuffer b = buf;
+        int limit = Math.min(Math.min(b.limit() - offset, capacity), dst.length);
+        int len = 0;
+        byte c;
+        while (len < limit && (c = b.get(offset + len)) != 0) {
+            dst[len++] = c;
+        }
+        return len;
+    }
+
+    private String readString(int offset, int capacity) {
+        int end = offset;
+        int limit = Math.min(buf.limit(), offset + capacity);
+        while (end < limit && buf.get(end) != 0) {
+            end++;
+        }
+        char[] cs = new char[end - offset];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = (char) (buf.get(offset + i) & 0xff);
+        }
+        return new String(cs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
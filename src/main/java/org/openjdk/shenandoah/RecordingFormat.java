@@ -0,0 +1,165 @@
+package org.openjdk.shenandoah;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of region recordings, shared by files and streams.
+ *
+ * <pre>
+ * header: magic:int version:short regionCount:int regionSize:long
+ * frame:  type:byte length:int time:long status:int payload[length - 12]
+ *
+ * KEY payload:   regionCount words
+ * DELTA payload: runs:varint { skip:varint count:varint words[count] }*
+ * INDEX payload: count:int { time:long offset:long }[count] self:long magic:int
+ * </pre>
+ *
+ * Words are the raw 64-bit region counters. A DELTA run skips the given number
+ * of unchanged regions after the previous run, then replaces {@code count}
+ * regions. Everything is little-endian.
+ *
+ * A cleanly closed recording ends with an INDEX frame listing the time and
+ * file offset of every key frame. Its last twelve bytes are the offset of the
+ * INDEX frame itself and the magic, so the index can be found from the end of
+ * the file. Sequential readers just skip it.
+ *
+ * Streams sent by a collector use the same header, followed by the name of
+ * the collected JVM ({@code length:short} UTF-8 bytes), and then KEY and
+ * DELTA frames. Every connection starts with a key frame.
+ */
+public class RecordingFormat {
+
+    public static final int MAGIC = 0x53485652; // "SHVR"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 4 + 2 + 4 + 8;
+
+    public static final byte KEY = 1;
+    public static final byte DELTA = 2;
+    public static final byte INDEX = 3;
+
+    /**
+     * Bytes at the end of a file that locate the INDEX frame.
+     */
+    public static final int TRAILER_SIZE = 8 + 4;
+
+    /**
+     * Bytes in front of every frame payload: type and length.
+     */
+    public static final int FRAME_HEADER_SIZE = 1 + 4;
+
+    /**
+     * Bytes counted in the frame length before the payload: time and status.
+     */
+    public static final int FRAME_PREFIX_SIZE = 8 + 4;
+
+    /**
+     * Longest stream name in bytes; longer names are truncated.
+     */
+    public static final int MAX_NAME_SIZE = 1024;
+
+    /**
+     * Largest region count accepted in a header. Well above the region count
+     * of any heap Shenandoah sizes, and small enough that a key frame stays
+     * far below 2 GB.
+     */
+    public static final int MAX_REGION_COUNT = 1 << 20;
+
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private RecordingFormat() {
+        // no instances
+    }
+
+    /**
+     * @return upper bound of the encoded size of one frame
+     */
+    public static int maxFrameSize(int regionCount) {
+        // A delta is never written when it is larger than a key frame
+        return FRAME_HEADER_SIZE + FRAME_PREFIX_SIZE + regionCount * 8;
+    }
+
+    public static void writeHeader(ByteBuffer buf, int regionCount, long regionSize) {
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+        buf.putInt(regionCount);
+        buf.putLong(regionSize);
+    }
+
+    /**
+     * Reads and checks the header, including the region count.
+     *
+     * @return region count and region size
+     */
+    public static long[] readHeader(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("Not a region recording");
+        }
+        short version = buf.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recording version: " + version);
+        }
+        int regionCount = buf.getInt();
+        long regionSize = buf.getLong();
+        if (regionCount < 1 || regionCount > MAX_REGION_COUNT) {
+            throw new IOException("Bad region count: " + regionCount);
+        }
+        return new long[] { regionCount, regionSize };
+    }
+
+    public static void writeName(ByteBuffer buf, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_SIZE);
+        buf.putShort((short) length);
+        buf.put(bytes, 0, length);
+    }
+
+    /**
+     * @return name, or null if the buffer does not hold all of it yet
+     */
+    public static String readName(ByteBuffer buf) {
+        if (buf.remaining() < 2) {
+            return null;
+        }
+        int length = buf.getShort(buf.position()) & 0xffff;
+        if (buf.remaining() < 2 + length) {
+            return null;
+        }
+        buf.getShort();
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void putVarint(ByteBuffer buf, int v) {
+        while ((v & ~0x7f) != 0) {
+            buf.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    static int getVarint(ByteBuffer buf) {
+        int v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            v |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+
+    static int varintSize(int v) {
+        int size = 1;
+        while ((v & ~0x7f) != 0) {
+            size++;
+            v >>>= 7;
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a region recording sequentially, through a reused read buffer.
+ * A frame cut short at the end of the file, e.g. by a crashed recorder,
+ * is treated as the end of the recording. An index too large for the buffer
+ * is skipped without reading it.
+ */
+public class RecordingReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buf;
+    private final int regionCount;
+    private final long regionSize;
+    private final FrameDecoder decoder;
+    private boolean eof;
+
+    public RecordingReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(RecordingFormat.HEADER_SIZE).order(RecordingFormat.ORDER);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            long[] h = RecordingFormat.readHeader(header);
+            regionCount = (int) h[0];
+            regionSize = h[1];
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        buf = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, 2 * RecordingFormat.maxFrameSize(regionCount)))
+                .order(RecordingFormat.ORDER);
+        buf.flip();
+        decoder = new FrameDecoder(regionCount, regionSize);
+    }
+
+    public int regionCount() {
+        return regionCount;
+    }
+
+    public long regionSize() {
+        return regionSize;
+    }
+
+    /**
+     * @return next snapshot, or null at the end of the recording
+     * @throws IOException if a region frame is larger than any frame of this region count
+     */
+    public Snapshot next() throws IOException {
+        while (true) {
+            while (!FrameDecoder.hasFrame(buf)) {
+                if (eof) {
+                    return null;
+                }
+                if (buf.remaining() >= RecordingFormat.FRAME_HEADER_SIZE &&
+                        FrameDecoder.length(buf) > buf.capacity() - RecordingFormat.FRAME_HEADER_SIZE) {
+                    skipLarge();
+                    continue;
+                }
+                buf.compact();
+                if (channel.read(buf) < 0) {
+                    eof = true;
+                }
+                buf.flip();
+            }
+            Snapshot s = decoder.decode(buf);
+            if (s != null) {
+                return s;
+            }
+        }
+    }
+
+    /**
+     * Skips the frame at the buffer position by moving the channel past it.
+     */
+    private void skipLarge() throws IOException {
+        if (buf.get(buf.position()) != RecordingFormat.INDEX) {
+            throw new IOException("Frame too large: " + FrameDecoder.length(buf));
+        }
+        long start = channel.position() - buf.remaining();
+        channel.position(start + RecordingFormat.FRAME_HEADER_SIZE + FrameDecoder.length(buf));
+        buf.clear();
+        buf.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
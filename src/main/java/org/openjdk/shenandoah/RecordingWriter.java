@@ -0,0 +1,128 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends snapshots to a region recording. Frames are collected in a direct
+ * buffer and written to the file channel in large chunks.
+ *
+ * When a size limit is given, the file is rotated once it grows past the
+ * limit: the current file is renamed with a {@code .1} suffix, replacing the
+ * previous one, and a fresh file starts with a key frame. Disk usage is then
+ * bounded by about twice the limit, while the latest data is always kept.
+ *
+ * Closing or rotating a file appends the key frame index used for seeking.
+ */
+public class RecordingWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path file;
+    private final long maxBytes;
+    private final int regionCount;
+    private final long regionSize;
+    private final FrameEncoder encoder;
+    private final ByteBuffer buf;
+
+    private FileChannel channel;
+    private long written;
+    private long frames;
+
+    // Key frames in the current file
+    private long[] keyTimes = new long[64];
+    private long[] keyOffsets = new long[64];
+    private int keys;
+    private long lastTime;
+
+    /**
+     * @param maxBytes size at which the file is rotated, or 0 for no limit
+     */
+    public RecordingWriter(Path file, int regionCount, long regionSize, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.regionCount = regionCount;
+        this.regionSize = regionSize;
+        this.encoder = new FrameEncoder(regionCount);
+        this.buf = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, 2 * RecordingFormat.maxFrameSize(regionCount)))
+                .order(RecordingFormat.ORDER);
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        written = 0;
+        keys = 0;
+        encoder.reset();
+        RecordingFormat.writeHeader(buf, regionCount, regionSize);
+    }
+
+    public void write(Snapshot s) throws IOException {
+        if (buf.remaining() < RecordingFormat.maxFrameSize(regionCount)) {
+            flush();
+        }
+        long offset = written + buf.position();
+        if (encoder.encode(s, buf)) {
+            if (keys == keyTimes.length) {
+                keyTimes = Arrays.copyOf(keyTimes, keys * 2);
+                keyOffsets = Arrays.copyOf(keyOffsets, keys * 2);
+            }
+            keyTimes[keys] = s.time();
+            keyOffsets[keys] = offset;
+            keys++;
+        }
+        lastTime = s.time();
+        frames++;
+
+        if (maxBytes > 0 && written + buf.position() >= maxBytes) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        finish();
+        Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    /**
+     * Writes out everything buffered so far.
+     */
+    public void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            written += channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * @return number of frames written since creation
+     */
+    public long frames() {
+        return frames;
+    }
+
+    private void finish() throws IOException {
+        flush();
+        ByteBuffer index = FrameEncoder.encodeIndex(keyTimes, keyOffsets, keys, lastTime, written);
+        while (index.hasRemaining()) {
+            written += channel.write(index);
+        }
+        channel.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+}
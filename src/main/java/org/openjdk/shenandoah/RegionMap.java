@@ -0,0 +1,612 @@
+package org.openjdk.shenandoah;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Region grid painted into a persistent back buffer. Only cells whose region
+ * changed since the last paint are redrawn; the buffer is rebuilt on resize,
+ * zoom and pan. Cells are written straight into the buffer pixels by a
+ * {@link RegionRaster}. All methods are expected to run on the event dispatch
+ * thread; large updates are painted in horizontal bands on the common
+ * fork-join pool, with the calling thread taking its share, and the buffer is
+ * blitted once.
+ *
+ * At the default zoom the grid fits the area. Zooming in scales the cells,
+ * and only the visible ones are painted. When cells would be smaller than
+ * {@link #MIN_CELL} pixels, squares of neighboring regions are painted as one
+ * tile instead, showing their majority state and average levels. The tile
+ * summaries are updated incrementally from the changed regions, so painting
+ * cost follows the number of tiles on screen rather than the heap size.
+ *
+ * Region connections are painted into a separate overlay layer, which is only
+ * rebuilt when the snapshot carries a different matrix, or the view changes.
+ * Beyond {@link #BUNDLE_THRESHOLD} connections, the grid is split into at most
+ * {@link #MAX_BLOCKS} square blocks, and all connections between two blocks
+ * are drawn as one line weighted by their number.
+ *
+ * Translucent lines are very slow in the software pipeline, so the overlay
+ * does not go through Java2D: lines only count how often they cover each
+ * pixel, and the counts are turned into the alpha that drawing that many
+ * {@link #CONNECTION} lines over each other would give.
+ */
+public class RegionMap {
+
+    public static final int BUNDLE_THRESHOLD = 2048;
+    public static final int MAX_BLOCKS = 64;
+    public static final int MIN_CELL = 4;
+    public static final int MAX_CELL = 128;
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    private static final Color CONNECTION = new Color(0, 0, 0, 20);
+    private static final int MAX_BUNDLE_ALPHA = 160;
+    private static final int MAX_BUNDLE_WIDTH = 4;
+
+    // Overlay pixel for the number of lines covering it
+    private static final int MAX_HITS = 255;
+    private static final int[] HIT_PIXELS = new int[MAX_HITS + 1];
+    private static final int MAX_BUNDLE_HITS;
+
+    static {
+        int rgb = CONNECTION.getRGB() & 0xffffff;
+        double transparent = 1;
+        int bundleHits = MAX_HITS;
+        for (int h = 1; h <= MAX_HITS; h++) {
+            transparent *= 1 - CONNECTION.getAlpha() / 255D;
+            int alpha = (int) Math.round(255 * (1 - transparent));
+            HIT_PIXELS[h] = (alpha << 24) | rgb;
+            if (alpha >= MAX_BUNDLE_ALPHA) {
+                bundleHits = Math.min(bundleHits, h);
+            }
+        }
+        MAX_BUNDLE_HITS = bundleHits;
+    }
+
+    private final int threads;
+
+    private int width, height;
+    private BufferedImage buffer;
+    private RegionRaster raster;
+    private Snapshot painted;
+
+    // Grid layout for the current size and region count
+    private int regionCount;
+    private int cols, rows;
+    private double fitCell;
+
+    // View: zoom relative to the fitted grid, and the grid origin in pixels
+    private double zoom = 1;
+    private double originX, originY;
+    private boolean viewChanged = true;
+
+    private Tiles tiles;
+
+    private BufferedImage overlay;
+    private int[] hits;
+    private ConnectionMatrix overlayMatrix;
+    private long overlayBuilds;
+
+    public RegionMap() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads number of threads to paint large updates with
+     */
+    public RegionMap(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.buffer = null;
+        this.raster = null;
+        this.painted = null;
+        this.regionCount = 0;
+        this.overlay = null;
+        this.hits = null;
+        this.overlayMatrix = null;
+    }
+
+    /**
+     * Zooms in or out by powers of two, keeping the point under (x, y) in place.
+     */
+    public void zoom(int notches, int x, int y) {
+        if (regionCount == 0) return;
+        double cell = fitCell * zoom;
+        double z = (notches < 0) ? zoom * (1 << -notches) : zoom / (1 << notches);
+        z = Math.max(1, Math.min(Math.max(1, MAX_CELL / fitCell), z));
+        double gx = (x - originX) / cell;
+        double gy = (y - originY) / cell;
+        zoom = z;
+        originX = x - gx * fitCell * z;
+        originY = y - gy * fitCell * z;
+        clampView();
+    }
+
+    public void pan(int dx, int dy) {
+        originX += dx;
+        originY += dy;
+        clampView();
+    }
+
+    public void resetView() {
+        zoom = 1;
+        originX = originY = 0;
+        viewChanged = true;
+    }
+
+    private void clampView() {
+        double cell = fitCell * zoom;
+        originX = Math.max(Math.min(0, width - cols * cell), Math.min(0, originX));
+        originY = Math.max(Math.min(0, height - rows * cell), Math.min(0, originY));
+        viewChanged = true;
+    }
+
+    private void layout(int regionCount) {
+        this.regionCount = regionCount;
+        double fit = Math.sqrt(1D * width * height / regionCount);
+        fitCell = (fit >= 1) ? Math.floor(fit) : fit;
+        cols = Math.max(1, (int) (width / fitCell));
+        rows = (regionCount + cols - 1) / cols;
+        clampView();
+    }
+
+    public void render(Graphics g, Snapshot snapshot) {
+        if (width <= 0 || height <= 0) return;
+
+        if (snapshot.regionCount() != regionCount) {
+            layout(snapshot.regionCount());
+        }
+        if (buffer == null) {
+            buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            raster = new RegionRaster(buffer);
+            viewChanged = true;
+        }
+
+        double cell = fitCell * zoom;
+        int group = 1;
+        while (cell * group < MIN_CELL) {
+            group <<= 1;
+        }
+
+        // Cells to paint are either regions or tiles; null repaints all visible ones
+        int[] changed;
+        if (group == 1) {
+            changed = viewChanged ? null : changedRegions(snapshot);
+        } else {
+            if (tiles == null || tiles.group != group || tiles.cols != cols || tiles.regionCount != regionCount) {
+                tiles = new Tiles(group, cols, regionCount);
+            }
+            int[] blocks = tiles.update(snapshot);
+            changed = viewChanged ? null : blocks;
+        }
+        paint(snapshot.data(), group, cell * group, changed);
+        painted = snapshot;
+        if (viewChanged) {
+            overlayMatrix = null;
+            viewChanged = false;
+        }
+
+        g.drawImage(buffer, 0, 0, null);
+
+        ConnectionMatrix matrix = snapshot.matrix();
+        if (matrix != null) {
+            if (overlay == null || overlayMatrix != matrix) {
+                renderConnections(matrix, cell);
+            }
+            g.drawImage(overlay, 0, 0, null);
+        }
+    }
+
+    private int[] changedRegions(Snapshot snapshot) {
+        SnapshotDelta delta = SnapshotDelta.between(painted, snapshot);
+        int[] changed = new int[delta.changedCount()];
+        for (int c = 0; c < changed.length; c++) {
+            changed[c] = delta.changed(c);
+        }
+        return changed;
+    }
+
+    /**
+     * Paints the given cells into the buffer, in horizontal bands on the
+     * common fork-join pool when there are enough of them. Cells never paint
+     * outside their square, so bands only touch their own rows of pixels.
+     */
+    private void paint(long[] data, int group, double size, int[] changed) {
+        int gridCols = (group == 1) ? cols : tiles.blockCols;
+        int gridRows = (group == 1) ? rows : tiles.blockRows;
+        int r0 = Math.max(0, (int) (-originY / size));
+        int r1 = Math.min(gridRows, (int) Math.ceil((height - originY) / size));
+        int visibleCols = Math.min(gridCols, (int) Math.ceil(width / size) + 1);
+        int work = (changed == null) ? (r1 - r0) * visibleCols : changed.length;
+        int bands = Math.min(r1 - r0, 2 * threads);
+
+        if (threads == 1 || bands < 2 || work < PARALLEL_THRESHOLD) {
+            paintBand(0, height, r0, r1, data, group, size, changed);
+            return;
+        }
+
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            int ra = r0 + (r1 - r0) * b / bands;
+            int rb = r0 + (r1 - r0) * (b + 1) / bands;
+            int y0 = (b == 0) ? 0 : rowY(ra, size);
+            int y1 = (b == bands - 1) ? height : rowY(rb, size);
+            paintBand(y0, y1, ra, rb, data, group, size, changed);
+        });
+    }
+
+    private int rowY(int row, double size) {
+        return Math.max(0, Math.min(height, (int) Math.floor(originY + row * size)));
+    }
+
+    private void paintBand(int y0, int y1, int r0, int r1, long[] data, int group, double size, int[] changed) {
+        int gridCols = (group == 1) ? cols : tiles.blockCols;
+        if (changed != null) {
+            for (int i : changed) {
+                int r = i / gridCols;
+                if (r >= r0 && r < r1) {
+                    renderCell(i % gridCols, r, size, (group == 1) ? data[i] : tiles.word(i), true);
+                }
+            }
+            return;
+        }
+
+        raster.clear(0, y0, width, y1 - y0);
+        int c0 = Math.max(0, (int) (-originX / size));
+        int c1 = Math.min(gridCols, (int) Math.ceil((width - originX) / size));
+        for (int r = r0; r < r1; r++) {
+            for (int c = c0; c < c1; c++) {
+                int i = r * gridCols + c;
+                if (group == 1) {
+                    if (i < regionCount) {
+                        renderCell(c, r, size, data[i], false);
+                    }
+                } else if (tiles.count[i] > 0) {
+                    renderCell(c, r, size, tiles.word(i), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Paints the cell at the given grid position, if it is visible.
+     */
+    private void renderCell(int col, int row, double size, long data, boolean clear) {
+        int x = (int) Math.floor(originX + col * size);
+        int y = (int) Math.floor(originY + row * size);
+        int w = (int) Math.floor(originX + (col + 1) * size) - x;
+        int h = (int) Math.floor(originY + (row + 1) * size) - y;
+        if (x >= width || y >= height || x + w <= 0 || y + h <= 0) {
+            return;
+        }
+        if (clear) {
+            raster.clear(x, y, w, h);
+        }
+        raster.render(data, x, y, w - 2, h - 2);
+    }
+
+    private void renderConnections(ConnectionMatrix matrix, double cell) {
+        if (overlay == null) {
+            overlay = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            hits = new int[width * height];
+        } else {
+            Arrays.fill(hits, 0);
+        }
+        overlayMatrix = matrix;
+        overlayBuilds++;
+
+        // Bundles never cover the regions completely, however many cross
+        int maxHits = MAX_HITS;
+        if (matrix.count() > BUNDLE_THRESHOLD) {
+            renderBundles(matrix, cell);
+            maxHits = MAX_BUNDLE_HITS;
+        } else {
+            renderEdges(matrix, cell);
+        }
+
+        int[] pixels = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+        for (int p = 0; p < pixels.length; p++) {
+            pixels[p] = HIT_PIXELS[Math.min(maxHits, hits[p])];
+        }
+    }
+
+    private int centerX(int col, double size) {
+        return (int) (originX + (col + 0.5) * size);
+    }
+
+    private int centerY(int row, double size) {
+        return (int) (originY + (row + 0.5) * size);
+    }
+
+    private void renderEdges(ConnectionMatrix matrix, double cell) {
+        for (int f = 0; f < matrix.size(); f++) {
+            int t = matrix.nextSetBit(f, 0);
+            if (t < 0) {
+                continue;
+            }
+            int f_rectx = centerX(f % cols, cell);
+            int f_recty = centerY(f / cols, cell);
+            for (; t >= 0; t = matrix.nextSetBit(f, t + 1)) {
+                int t_rectx = centerX(t % cols, cell);
+                int t_recty = centerY(t / cols, cell);
+                line(f_rectx, f_recty, t_rectx, t_recty, 1, 1);
+            }
+        }
+    }
+
+    /**
+     * @return side, in regions, of the square blocks that split the grid into at most {@link #MAX_BLOCKS}
+     */
+    static int blockSide(int cols, int rows) {
+        int side = Math.max(1, (int) Math.ceil(Math.sqrt(1D * cols * rows / MAX_BLOCKS)));
+        while (((cols + side - 1) / side) * ((rows + side - 1) / side) > MAX_BLOCKS) {
+            side++;
+        }
+        return side;
+    }
+
+    /**
+     * Counts the connections between every two blocks of {@code side} regions
+     * on a side. Connections within a block are not visible at this scale, and
+     * both directions between two blocks share one bundle, so the weight of
+     * blocks {@code a < b} is at {@code a * blocks + b}.
+     */
+    static int[] bundleWeights(ConnectionMatrix matrix, int cols, int side, int blockCols, int blocks) {
+        int[] weights = new int[blocks * blocks];
+        for (int f = 0; f < matrix.size(); f++) {
+            int t = matrix.nextSetBit(f, 0);
+            if (t < 0) {
+                continue;
+            }
+            int bf = (f / cols / side) * blockCols + (f % cols) / side;
+            for (; t >= 0; t = matrix.nextSetBit(f, t + 1)) {
+                int bt = (t / cols / side) * blockCols + (t % cols) / side;
+                if (bf != bt) {
+                    weights[Math.min(bf, bt) * blocks + Math.max(bf, bt)]++;
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * @return number of times the connection overlay was built
+     */
+    long overlayBuilds() {
+        return overlayBuilds;
+    }
+
+    private void renderBundles(ConnectionMatrix matrix, double cell) {
+        int side = blockSide(cols, rows);
+        int blockCols = (cols + side - 1) / side;
+        int blocks = blockCols * ((rows + side - 1) / side);
+        int[] weights = bundleWeights(matrix, cols, side, blockCols, blocks);
+        int max = 0;
+        for (int w : weights) {
+            max = Math.max(max, w);
+        }
+        if (max == 0) {
+            return;
+        }
+
+        double scale = Math.log(max + 1);
+        double size = side * cell;
+        int maxWidth = Math.max(1, Math.min(MAX_BUNDLE_WIDTH, (int) (size / 4)));
+        for (int bf = 0; bf < blocks; bf++) {
+            for (int bt = bf + 1; bt < blocks; bt++) {
+                int w = weights[bf * blocks + bt];
+                if (w == 0) {
+                    continue;
+                }
+                double k = Math.log(w + 1) / scale;
+                line(centerX(bf % blockCols, size), centerY(bf / blockCols, size),
+                        centerX(bt % blockCols, size), centerY(bt / blockCols, size),
+                        1 + (int) Math.round(k * (maxWidth - 1)),
+                        1 + (int) Math.round(k * (MAX_BUNDLE_HITS - 1)));
+            }
+        }
+    }
+
+    /**
+     * Adds {@code weight} hits to every pixel covered by the line, which is
+     * {@code thickness} pixels wide with square caps.
+     *
+     * Coverage is the same as that of {@code Graphics.drawLine()} with a
+     * translucent color, which Java2D fills as a shape: the stroke outline
+     * around the normalized end points, offset by a quarter pixel, covers
+     * the pixels whose centers fall inside it.
+     */
+    private void line(int x0, int y0, int x1, int y1, int thickness, int weight) {
+        double half = thickness / 2D;
+        if (Math.max(x0, x1) + half + 1 < 0 || Math.min(x0, x1) - half - 1 >= width ||
+                Math.max(y0, y1) + half + 1 < 0 || Math.min(y0, y1) - half - 1 >= height) {
+            return;
+        }
+        double ax = x0 + 0.25;
+        double ay = y0 + 0.25;
+        double len = Math.hypot(x1 - x0, y1 - y0);
+        double ux = (len == 0) ? 1 : (x1 - x0) / len;
+        double uy = (len == 0) ? 0 : (y1 - y0) / len;
+
+        // Rows the outline spans: end points extended by the caps, plus half the width
+        double ext = half * (Math.abs(ux) + Math.abs(uy));
+        int top = Math.max(0, (int) Math.floor(Math.min(y0, y1) + 0.25 - ext));
+        int bottom = Math.min(height - 1, (int) Math.ceil(Math.max(y0, y1) + 0.25 + ext));
+
+        for (int py = top; py <= bottom; py++) {
+            // Pixel center relative to the start: along in [-half, len + half), across in [-half, half)
+            double cy = py + 0.5 - ay;
+            double lo = Double.NEGATIVE_INFINITY;
+            double hi = Double.POSITIVE_INFINITY;
+            boolean loOpen = false;
+            boolean hiOpen = false;
+
+            // along = cx * ux + cy * uy
+            if (ux > 0) {
+                lo = (-half - cy * uy) / ux;
+                hi = (len + half - cy * uy) / ux;
+                hiOpen = true;
+            } else if (ux < 0) {
+                lo = (len + half - cy * uy) / ux;
+                hi = (-half - cy * uy) / ux;
+                loOpen = true;
+            } else if (cy * uy < -half || cy * uy >= len + half) {
+                continue;
+            }
+
+            // across = cy * ux - cx * uy
+            double l, h;
+            boolean lOpen, hOpen;
+            if (uy > 0) {
+                l = (cy * ux - half) / uy;
+                h = (cy * ux + half) / uy;
+                lOpen = true;
+                hOpen = false;
+            } else if (uy < 0) {
+                l = (cy * ux + half) / uy;
+                h = (cy * ux - half) / uy;
+                lOpen = false;
+                hOpen = true;
+            } else if (cy * ux < -half || cy * ux >= half) {
+                continue;
+            } else {
+                l = Double.NEGATIVE_INFINITY;
+                h = Double.POSITIVE_INFINITY;
+                lOpen = false;
+                hOpen = false;
+            }
+            if (l > lo || (l == lo && lOpen)) {
+                lo = l;
+                loOpen = lOpen;
+            }
+            if (h < hi || (h == hi && hOpen)) {
+                hi = h;
+                hiOpen = hOpen;
+            }
+
+            // Pixels with cx = px + 0.5 - ax within the bounds
+            double first = lo + ax - 0.5;
+            double last = hi + ax - 0.5;
+            int from = (int) Math.max(0, loOpen ? Math.floor(first) + 1 : Math.ceil(first));
+            int to = (int) Math.min(width - 1, hiOpen ? Math.ceil(last) - 1 : Math.floor(last));
+            int row = py * width;
+            for (int px = from; px <= to; px++) {
+                hits[row + px] += weight;
+            }
+        }
+    }
+
+    /**
+     * Summaries of square blocks of regions, {@code group} regions on a side.
+     */
+    private static class Tiles {
+        private static final RegionState[] STATES = RegionState.values();
+
+        final int group;
+        final int cols;
+        final int regionCount;
+        final int blockCols, blockRows;
+        final int[] count, used, live, tlab, gclab, shared;
+        final int[] states;
+        final int[] stamp;
+        int epoch;
+        Snapshot summarized;
+
+        Tiles(int group, int cols, int regionCount) {
+            this.group = group;
+            this.cols = cols;
+            this.regionCount = regionCount;
+            this.blockCols = (cols + group - 1) / group;
+            this.blockRows = ((regionCount + cols - 1) / cols + group - 1) / group;
+            int blocks = blockCols * blockRows;
+            count = new int[blocks];
+            used = new int[blocks];
+            live = new int[blocks];
+            tlab = new int[blocks];
+            gclab = new int[blocks];
+            shared = new int[blocks];
+            states = new int[blocks * STATES.length];
+            stamp = new int[blocks];
+        }
+
+        int block(int region) {
+            return (region / cols / group) * blockCols + (region % cols) / group;
+        }
+
+        private void add(int b, long data, int sign) {
+            count[b] += sign;
+            used[b] += sign * RegionStat.usedPercent(data);
+            live[b] += sign * RegionStat.livePercent(data);
+            tlab[b] += sign * RegionStat.tlabPercent(data);
+            gclab[b] += sign * RegionStat.gclabPercent(data);
+            shared[b] += sign * RegionStat.sharedPercent(data);
+            states[b * STATES.length + RegionStat.state(data).ordinal()] += sign;
+        }
+
+        /**
+         * Brings the summaries up to the snapshot.
+         *
+         * @return blocks that changed, or all blocks if the summaries were rebuilt
+         */
+        int[] update(Snapshot s) {
+            SnapshotDelta delta = SnapshotDelta.between(summarized, s);
+            long[] data = s.data();
+            if (delta.isFull()) {
+                Arrays.fill(count, 0);
+                Arrays.fill(used, 0);
+                Arrays.fill(live, 0);
+                Arrays.fill(tlab, 0);
+                Arrays.fill(gclab, 0);
+                Arrays.fill(shared, 0);
+                Arrays.fill(states, 0);
+                for (int i = 0; i < data.length; i++) {
+                    add(block(i), data[i], 1);
+                }
+                summarized = s;
+                int[] all = new int[count.length];
+                for (int b = 0; b < all.length; b++) {
+                    all[b] = b;
+                }
+                return all;
+            }
+
+            long[] prev = summarized.data();
+            int[] changed = new int[Math.min(count.length, delta.changedCount())];
+            int n = 0;
+            epoch++;
+            for (int c = 0; c < delta.changedCount(); c++) {
+                int i = delta.changed(c);
+                int b = block(i);
+                add(b, prev[i], -1);
+                add(b, data[i], 1);
+                if (stamp[b] != epoch) {
+                    stamp[b] = epoch;
+                    changed[n++] = b;
+                }
+            }
+            summarized = s;
+            return (n == changed.length) ? changed : Arrays.copyOf(changed, n);
+        }
+
+        /**
+         * @return region word with the majority state and average levels of the block
+         */
+        long word(int b) {
+            int n = count[b];
+            int best = 0;
+            for (int st = 1; st < STATES.length; st++) {
+                if (states[b * STATES.length + st] > states[b * STATES.length + best]) {
+                    best = st;
+                }
+            }
+            return RegionStat.pack(used[b] / 100F / n, live[b] / 100F / n,
+                    tlab[b] / 100F / n, gclab[b] / 100F / n, shared[b] / 100F / n, STATES[best]);
+        }
+    }
+
+}
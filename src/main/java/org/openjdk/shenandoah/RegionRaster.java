@@ -0,0 +1,348 @@
+package org.openjdk.shenandoah;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.openjdk.shenandoah.Colors.*;
+
+/**
+ * Paints region cells straight into the pixels of a {@code TYPE_INT_ARGB}
+ * image, with the same result as {@link RegionStat#render}, pixel for pixel.
+ *
+ * Each cell takes up to a dozen Java2D calls, and each call pays for pipeline
+ * validation. Here colors are ARGB values from tables, translucent fills are
+ * blended with the same arithmetic the Java2D loops use, and the diagonal
+ * lines of trash and uncommitted regions are stamped from pixel offsets
+ * computed once per cell size.
+ *
+ * Cells may be painted from several threads at once, as long as they do not
+ * overlap.
+ */
+public class RegionRaster {
+
+    private static final int PERCENTS = RegionStat.PERCENTS;
+
+    private static final int WHITE = Color.WHITE.getRGB();
+    private static final int BLACK = Color.BLACK.getRGB();
+    private static final int BORDER_RGB = BORDER.getRGB();
+    private static final int USED_RGB = USED.getRGB();
+    private static final int PINNED_RGB = LIVE_PINNED.getRGB();
+    private static final int TLAB_BORDER_RGB = TLAB_ALLOC_BORDER.getRGB();
+    private static final int GCLAB_BORDER_RGB = GCLAB_ALLOC_BORDER.getRGB();
+    private static final int SHARED_BORDER_RGB = SHARED_ALLOC_BORDER.getRGB();
+    private static final int[] LIVE_RGB = new int[RegionState.values().length];
+
+    // Java2D's approximation of a * b / 255, indexed by (a << 8) | b
+    private static final byte[] MUL8 = new byte[256 * 256];
+
+    // Allocation fills by live percent: alpha, and color premultiplied by it
+    private static final int[] TLAB_ALPHA = new int[PERCENTS];
+    private static final int[] TLAB_PRE = new int[PERCENTS];
+    private static final int[] GCLAB_ALPHA = new int[PERCENTS];
+    private static final int[] GCLAB_PRE = new int[PERCENTS];
+    private static final int[] SHARED_ALPHA = new int[PERCENTS];
+    private static final int[] SHARED_PRE = new int[PERCENTS];
+
+    static {
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL8[(a << 8) | b] = (byte) (((long) a * 0x10101 * b + (1 << 23)) >>> 24);
+            }
+        }
+        for (RegionState state : RegionState.values()) {
+            LIVE_RGB[state.ordinal()] = RegionStat.selectLive(state).getRGB();
+        }
+        for (int p = 0; p < PERCENTS; p++) {
+            Color tlab = RegionStat.mixAlpha(TLAB_ALLOC, RegionStat.level(p));
+            Color gclab = RegionStat.mixAlpha(GCLAB_ALLOC, RegionStat.level(p));
+            Color shared = RegionStat.mixAlpha(SHARED_ALLOC, RegionStat.level(p));
+            TLAB_ALPHA[p] = tlab.getAlpha();
+            TLAB_PRE[p] = premultiply(tlab);
+            GCLAB_ALPHA[p] = gclab.getAlpha();
+            GCLAB_PRE[p] = premultiply(gclab);
+            SHARED_ALPHA[p] = shared.getAlpha();
+            SHARED_PRE[p] = premultiply(shared);
+        }
+    }
+
+    private final int[] pixels;
+    private final int width, height;
+
+    // Line pixels of the decorations by cell size, and the last ones used
+    private final Map<Long, Stamp> trash = new ConcurrentHashMap<>();
+    private final Map<Long, Stamp> uncommitted = new ConcurrentHashMap<>();
+    private volatile Stamp lastTrash, lastUncommitted;
+
+    public RegionRaster(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            throw new IllegalArgumentException("Expected an ARGB image, got type " + image.getType());
+        }
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    private static int mul8(int a, int b) {
+        return MUL8[(a << 8) | b] & 0xff;
+    }
+
+    private static int premultiply(Color c) {
+        int a = c.getAlpha();
+        return (mul8(a, c.getRed()) << 16) | (mul8(a, c.getGreen()) << 8) | mul8(a, c.getBlue());
+    }
+
+    /**
+     * Paints the region with the given packed word, as {@link RegionStat#render} would.
+     */
+    public void render(long data, int x, int y, int width, int height) {
+        RegionState state = RegionStat.state(data);
+        float usedLvl = RegionStat.level(RegionStat.usedPercent(data));
+        int livePct = RegionStat.livePercent(data);
+        float liveLvl = RegionStat.level(livePct);
+        float tlabLvl = RegionStat.level(RegionStat.tlabPercent(data));
+        float gclabLvl = RegionStat.level(RegionStat.gclabPercent(data));
+        float sharedLvl = RegionStat.level(RegionStat.sharedPercent(data));
+
+        fill(x, y, width, height, WHITE);
+
+        switch (state) {
+            case REGULAR: {
+                if (gclabLvl > 0 || tlabLvl > 0 || sharedLvl > 0) {
+                    int sharedWidth = (int) (width * sharedLvl);
+                    int tlabWidth = (int) (width * tlabLvl);
+                    int gclabWidth = (int) (width * gclabLvl);
+
+                    int lx = x;
+                    blend(lx, y, tlabWidth, height, TLAB_ALPHA[livePct], TLAB_PRE[livePct]);
+                    outline(lx, y, tlabWidth, height, TLAB_BORDER_RGB);
+
+                    lx += tlabWidth;
+                    blend(lx, y, gclabWidth, height, GCLAB_ALPHA[livePct], GCLAB_PRE[livePct]);
+                    outline(lx, y, gclabWidth, height, GCLAB_BORDER_RGB);
+
+                    lx += gclabWidth;
+                    blend(lx, y, sharedWidth, height, SHARED_ALPHA[livePct], SHARED_PRE[livePct]);
+                    outline(lx, y, sharedWidth, height, SHARED_BORDER_RGB);
+                }
+                break;
+            }
+            case PINNED: {
+                fill(x, y, (int) (width * usedLvl), height, PINNED_RGB);
+                break;
+            }
+            case CSET:
+            case PINNED_CSET:
+            case HUMONGOUS:
+            case PINNED_HUMONGOUS: {
+                fill(x, y, (int) (width * usedLvl), height, USED_RGB);
+                int liveWidth = (int) (width * liveLvl);
+                int live = LIVE_RGB[state.ordinal()];
+                fill(x, y, liveWidth, height, live);
+                fill(x + liveWidth, Math.min(y, y + height), 1, Math.abs(height) + 1, live);
+                break;
+            }
+            case EMPTY_COMMITTED:
+            case EMPTY_UNCOMMITTED:
+            case TRASH:
+                break;
+            default:
+                throw new IllegalStateException("Unhandled region state: " + state);
+        }
+
+        if (state == RegionState.TRASH) {
+            Stamp s = lastTrash;
+            if (s == null || s.width != width || s.height != height) {
+                s = trash.get(size(width, height));
+                if (s == null) {
+                    s = new Stamp(width, height, trashStamp(width, height));
+                    trash.put(size(width, height), s);
+                }
+                lastTrash = s;
+            }
+            stamp(s.points, x, y, BLACK);
+        }
+
+        if (state == RegionState.EMPTY_UNCOMMITTED) {
+            Stamp s = lastUncommitted;
+            if (s == null || s.width != width || s.height != height) {
+                s = uncommitted.get(size(width, height));
+                if (s == null) {
+                    s = new Stamp(width, height, uncommittedStamp(width, height));
+                    uncommitted.put(size(width, height), s);
+                }
+                lastUncommitted = s;
+            }
+            stamp(s.points, x, y, BORDER_RGB);
+        }
+
+        outline(x, y, width, height, BORDER_RGB);
+    }
+
+    /**
+     * Makes the area transparent.
+     */
+    public void clear(int x, int y, int width, int height) {
+        fill(x, y, width, height, 0);
+    }
+
+    private static long size(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    private void fill(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(0, x), x1 = Math.min(width, x + w);
+        int y0 = Math.max(0, y), y1 = Math.min(height, y + h);
+        for (int py = y0; py < y1; py++) {
+            int row = py * width;
+            for (int p = row + x0; p < row + x1; p++) {
+                pixels[p] = argb;
+            }
+        }
+    }
+
+    /**
+     * Source-over fill with a translucent color, rounding as the Java2D loops do.
+     */
+    private void blend(int x, int y, int w, int h, int alpha, int pre) {
+        if (alpha == 255) {
+            fill(x, y, w, h, 0xff000000 | pre);
+            return;
+        }
+        int keep = 255 - alpha;
+        int x0 = Math.max(0, x), x1 = Math.min(width, x + w);
+        int y0 = Math.max(0, y), y1 = Math.min(height, y + h);
+        for (int py = y0; py < y1; py++) {
+            int row = py * width;
+            for (int p = row + x0; p < row + x1; p++) {
+                int dst = pixels[p];
+                int dstA = dst >>> 24;
+                if (dstA == 255) {
+                    pixels[p] = 0xff000000 |
+                            ((((pre >> 16) & 0xff) + mul8(keep, (dst >> 16) & 0xff)) << 16) |
+                            ((((pre >> 8) & 0xff) + mul8(keep, (dst >> 8) & 0xff)) << 8) |
+                            ((pre & 0xff) + mul8(keep, dst & 0xff));
+                } else {
+                    pixels[p] = blend(dst, alpha, pre, keep);
+                }
+            }
+        }
+    }
+
+    private static int blend(int dst, int alpha, int pre, int keep) {
+        int f = mul8(keep, dst >>> 24);
+        int resA = alpha + f;
+        int res = resA << 24;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int c = ((pre >> shift) & 0xff) + mul8(f, (dst >> shift) & 0xff);
+            if (resA < 255) {
+                c = div8(resA, c);
+            }
+            res |= c << shift;
+        }
+        return res;
+    }
+
+    // Java2D's approximation of min(255, c * 255 / a)
+    private static int div8(int a, int c) {
+        if (c >= a) {
+            return 255;
+        }
+        long inc = (0xff000000L + a / 2) / a;
+        return (int) ((c * inc + (1 << 23)) >>> 24);
+    }
+
+    /**
+     * Same pixels as {@link Graphics#drawRect}: the outline of a (w + 1) x (h + 1) area.
+     */
+    private void outline(int x, int y, int w, int h, int argb) {
+        if (w < 0 || h < 0) {
+            return;
+        }
+        fill(x, y, w + 1, 1, argb);
+        fill(x, y + h, w + 1, 1, argb);
+        fill(x, y + 1, 1, h - 1, argb);
+        fill(x + w, y + 1, 1, h - 1, argb);
+    }
+
+    private void stamp(int[] points, int x, int y, int argb) {
+        for (int pt : points) {
+            int px = x + (pt >> 16);
+            int py = y + (short) pt;
+            if (px >= 0 && px < width && py >= 0 && py < height) {
+                pixels[py * width + px] = argb;
+            }
+        }
+    }
+
+    private static int[] trashStamp(int w, int h) {
+        int[] points = new int[2 * length(w, h)];
+        int n = bresenham(points, 0, 0, 0, w, h);
+        bresenham(points, n, 0, h, w, 0);
+        return points;
+    }
+
+    private static int[] uncommittedStamp(int w, int h) {
+        int[] offs = new int[3];
+        int count = 0;
+        for (int t = 0; t < 3; t++) {
+            offs[t] = w * t / 3;
+            count += length(offs[t], offs[t]) + length(w - offs[t], h - offs[t]);
+        }
+        int[] points = new int[count];
+        int n = 0;
+        for (int off : offs) {
+            n = bresenham(points, n, 0, off, off, 0);
+            n = bresenham(points, n, off, h, w, off);
+        }
+        return points;
+    }
+
+    private static int length(int dx, int dy) {
+        return Math.max(Math.abs(dx), Math.abs(dy)) + 1;
+    }
+
+    /**
+     * Appends the pixels Java2D draws for a one pixel wide line, both ends included.
+     *
+     * @return index after the last appended point
+     */
+    private static int bresenham(int[] points, int n, int x0, int y0, int x1, int y1) {
+        int dx = x1 - x0, dy = y1 - y0;
+        int ax = Math.abs(dx), ay = Math.abs(dy);
+        int sx = (dx < 0) ? -1 : 1, sy = (dy < 0) ? -1 : 1;
+        boolean xMajor = ax >= ay;
+        int steps = (xMajor ? ax : ay) + 1;
+        int errMajor = 2 * (xMajor ? ay : ax);
+        int errMinor = 2 * (xMajor ? ax : ay);
+        int err = -(errMinor / 2);
+        int x = x0, y = y0;
+        for (int i = 0; i < steps; i++) {
+            points[n++] = (x << 16) | (y & 0xffff);
+            err += errMajor;
+            if (err >= 0) {
+                err -= errMinor;
+                if (xMajor) y += sy; else x += sx;
+            }
+            if (xMajor) x += sx; else y += sy;
+        }
+        return n;
+    }
+
+    /**
+     * Line pixels of a decoration for one cell size, as {@code x << 16 | y} offsets.
+     */
+    private static class Stamp {
+        final int width, height;
+        final int[] points;
+
+        Stamp(int width, int height, int[] points) {
+            this.width = width;
+            this.height = height;
+            this.points = points;
+        }
+    }
+
+}
@@ -1,12 +1,14 @@
 package org.openjdk.shenandoah;
 
-import javax.swing.plaf.synth.Region;
 import java.awt.*;
 import java.util.BitSet;
-import java.util.EnumSet;
 
 import static org.openjdk.shenandoah.Colors.*;
 
+/**
+ * View over a single packed region word, as published in
+ * {@code sun.gc.shenandoah.regions.region.N.data}.
+ */
 public class RegionStat {
 
     private static final int PERCENT_MASK = 0x7f;
@@ -19,53 +21,100 @@ public class RegionStat {
     private static final int SHARED_SHIFT = 28;
     private static final int FLAGS_SHIFT  = 58;
 
-    private final RegionState state;
+    static final int PERCENTS = PERCENT_MASK + 1;
+
+    /**
+     * Decoding tables: percent to level, and state flags to state (null if unknown).
+     */
+    private static final float[] LEVELS = new float[PERCENTS];
+    private static final RegionState[] STATES = new RegionState[FLAGS_MASK + 1];
+
+    /**
+     * Allocation colors with the alpha {@link #mixAlpha} gives each live percent,
+     * so painting does not create colors.
+     */
+    private static final Color[] TLAB_BY_LIVE = new Color[PERCENTS];
+    private static final Color[] GCLAB_BY_LIVE = new Color[PERCENTS];
+    private static final Color[] SHARED_BY_LIVE = new Color[PERCENTS];
+
+    static {
+        for (int p = 0; p < PERCENTS; p++) {
+            LEVELS[p] = p / 100F;
+            TLAB_BY_LIVE[p] = mixAlpha(TLAB_ALLOC, LEVELS[p]);
+            GCLAB_BY_LIVE[p] = mixAlpha(GCLAB_ALLOC, LEVELS[p]);
+            SHARED_BY_LIVE[p] = mixAlpha(SHARED_ALLOC, LEVELS[p]);
+        }
+        for (int f = 0; f < STATES.length; f++) {
+            try {
+                STATES[f] = RegionState.fromOrdinal(f);
+            } catch (IllegalStateException e) {
+                // unknown flags, rejected on use
+            }
+        }
+    }
+
+    /**
+     * @return level of the given percent, as painted
+     */
+    static float level(int percent) {
+        return LEVELS[percent];
+    }
+
+    private final long data;
     private final BitSet incoming;
-    private final float liveLvl;
-    private final float usedLvl;
-    private final float tlabLvl;
-    private final float gclabLvl;
-    private final float sharedLvl;
 
     public RegionStat(float usedLvl, float liveLvl, float tlabLvl, float gclabLvl, float sharedLvl, RegionState state) {
-        this.incoming = null;
-        this.usedLvl = usedLvl;
-        this.liveLvl = liveLvl;
-        this.tlabLvl = tlabLvl;
-        this.gclabLvl = gclabLvl;
-        this.sharedLvl = sharedLvl;
-        this.state = state;
-    }
-
-
-    public RegionStat(long data, String matrix) {
-        usedLvl  = ((data >>> USED_SHIFT)  & PERCENT_MASK) / 100F;
-        liveLvl  = ((data >>> LIVE_SHIFT)  & PERCENT_MASK) / 100F;
-        tlabLvl  = ((data >>> TLAB_SHIFT)  & PERCENT_MASK) / 100F;
-        gclabLvl = ((data >>> GCLAB_SHIFT) & PERCENT_MASK) / 100F;
-        sharedLvl = ((data >>> SHARED_SHIFT) & PERCENT_MASK) / 100F;
-
-        long stat = (data >>> FLAGS_SHIFT) & FLAGS_MASK;
-        state = RegionState.fromOrdinal((int) stat);
-
-        if (!matrix.isEmpty()) {
-            this.incoming = new BitSet();
-            int idx = 0;
-            for (char c : matrix.toCharArray()) {
-                c = (char) (c - 32);
-                incoming.set(idx++, (c & (1 << 0)) > 0);
-                incoming.set(idx++, (c & (1 << 1)) > 0);
-                incoming.set(idx++, (c & (1 << 2)) > 0);
-                incoming.set(idx++, (c & (1 << 3)) > 0);
-                incoming.set(idx++, (c & (1 << 4)) > 0);
-                incoming.set(idx++, (c & (1 << 5)) > 0);
-            }
-        } else {
-            this.incoming = null;
+        this(pack(usedLvl, liveLvl, tlabLvl, gclabLvl, sharedLvl, state), null);
+    }
+
+    public RegionStat(long data, BitSet incoming) {
+        this.data = data;
+        this.incoming = incoming;
+    }
+
+    static long pack(float usedLvl, float liveLvl, float tlabLvl, float gclabLvl, float sharedLvl, RegionState state) {
+        return ((long) toPercent(usedLvl)   << USED_SHIFT) |
+               ((long) toPercent(liveLvl)   << LIVE_SHIFT) |
+               ((long) toPercent(tlabLvl)   << TLAB_SHIFT) |
+               ((long) toPercent(gclabLvl)  << GCLAB_SHIFT) |
+               ((long) toPercent(sharedLvl) << SHARED_SHIFT) |
+               ((long) state.toOrdinal()    << FLAGS_SHIFT);
+    }
+
+    private static int toPercent(float lvl) {
+        return Math.round(lvl * 100) & PERCENT_MASK;
+    }
+
+    static int usedPercent(long data) {
+        return (int) ((data >>> USED_SHIFT) & PERCENT_MASK);
+    }
+
+    static int livePercent(long data) {
+        return (int) ((data >>> LIVE_SHIFT) & PERCENT_MASK);
+    }
+
+    static int tlabPercent(long data) {
+        return (int) ((data >>> TLAB_SHIFT) & PERCENT_MASK);
+    }
+
+    static int gclabPercent(long data) {
+        return (int) ((data >>> GCLAB_SHIFT) & PERCENT_MASK);
+    }
+
+    static int sharedPercent(long data) {
+        return (int) ((data >>> SHARED_SHIFT) & PERCENT_MASK);
+    }
+
+    static RegionState state(long data) {
+        int flags = (int) ((data >>> FLAGS_SHIFT) & FLAGS_MASK);
+        RegionState s = STATES[flags];
+        if (s == null) {
+            throw new IllegalStateException("Unhandled ordinal: " + flags);
         }
+        return s;
     }
 
-    private Color selectLive(RegionState s) {
+    static Color selectLive(RegionState s) {
         switch (s) {
             case CSET:
                 return LIVE_CSET;
@@ -89,11 +138,27 @@ public class RegionStat {
         }
     }
 
-    private Color mixAlpha(Color c, float alpha) {
-        return new Color(c.getRed(), c.getGreen(), c.getBlue(), (int)(alpha * 200 + 55));
+    static Color mixAlpha(Color c, float alpha) {
+        return new Color(c.getRed(), c.getGreen(), c.getBlue(), Math.min(255, (int)(alpha * 200 + 55)));
     }
 
     public void render(Graphics g, int x, int y, int width, int height) {
+        render(g, data, x, y, width, height);
+    }
+
+    /**
+     * Paints the region with the given packed word. Decoding and colors come
+     * from lookup tables, so this does not allocate.
+     */
+    static void render(Graphics g, long data, int x, int y, int width, int height) {
+        RegionState state = state(data);
+        float usedLvl = LEVELS[usedPercent(data)];
+        int livePct = livePercent(data);
+        float liveLvl = LEVELS[livePct];
+        float tlabLvl = LEVELS[tlabPercent(data)];
+        float gclabLvl = LEVELS[gclabPercent(data)];
+        float sharedLvl = LEVELS[sharedPercent(data)];
+
         g.setColor(Color.WHITE);
         g.fillRect(x, y, width, height);
 
@@ -108,19 +173,19 @@ public class RegionStat {
                     int ly = y + (height - h);
                     int lx = x;
 
-                    g.setColor(mixAlpha(TLAB_ALLOC, liveLvl));
+                    g.setColor(TLAB_BY_LIVE[livePct]);
                     g.fillRect(lx, ly, tlabWidth, h);
                     g.setColor(TLAB_ALLOC_BORDER);
                     g.drawRect(lx, ly, tlabWidth, h);
 
                     lx += tlabWidth;
-                    g.setColor(mixAlpha(GCLAB_ALLOC, liveLvl));
+                    g.setColor(GCLAB_BY_LIVE[livePct]);
                     g.fillRect(lx, ly, gclabWidth, h);
                     g.setColor(GCLAB_ALLOC_BORDER);
                     g.drawRect(lx, ly, gclabWidth, h);
 
                     lx += gclabWidth;
-                    g.setColor(mixAlpha(SHARED_ALLOC, liveLvl));
+                    g.setColor(SHARED_BY_LIVE[livePct]);
                     g.fillRect(lx, ly, sharedWidth, h);
                     g.setColor(SHARED_ALLOC_BORDER);
                     g.drawRect(lx, ly, sharedWidth, h);
@@ -183,47 +248,43 @@ public class RegionStat {
 
         RegionStat that = (RegionStat) o;
 
-        if (Float.compare(that.liveLvl, liveLvl) != 0) return false;
-        if (Float.compare(that.usedLvl, usedLvl) != 0) return false;
-        if (Float.compare(that.tlabLvl, tlabLvl) != 0) return false;
-        if (Float.compare(that.gclabLvl, gclabLvl) != 0) return false;
-        if (!state.equals(that.state)) return false;
+        if (data != that.data) return false;
         return incoming != null ? incoming.equals(that.incoming) : that.incoming == null;
     }
 
     @Override
     public int hashCode() {
-        int result = state.hashCode();
+        int result = Long.hashCode(data);
         result = 31 * result + (incoming != null ? incoming.hashCode() : 0);
-        result = 31 * result + (liveLvl != +0.0f ? Float.floatToIntBits(liveLvl) : 0);
-        result = 31 * result + (usedLvl != +0.0f ? Float.floatToIntBits(usedLvl) : 0);
-        result = 31 * result + (tlabLvl != +0.0f ? Float.floatToIntBits(tlabLvl) : 0);
-        result = 31 * result + (gclabLvl != +0.0f ? Float.floatToIntBits(gclabLvl) : 0);
         return result;
     }
 
+    public long data() {
+        return data;
+    }
+
     public float live() {
-        return liveLvl;
+        return LEVELS[livePercent(data)];
     }
 
     public float used() {
-        return usedLvl;
+        return LEVELS[usedPercent(data)];
     }
 
     public float tlabAllocs() {
-        return tlabLvl;
+        return LEVELS[tlabPercent(data)];
     }
 
     public float gclabAllocs() {
-        return gclabLvl;
+        return LEVELS[gclabPercent(data)];
     }
 
     public float sharedAllocs() {
-        return sharedLvl;
+        return LEVELS[sharedPercent(data)];
     }
 
     public RegionState state() {
-        return state;
+        return state(data);
     }
 
     public BitSet incoming() {
@@ -39,4 +39,20 @@ public enum RegionState {
         }
     }
 
+    int toOrdinal() {
+        switch (this) {
+            case EMPTY_UNCOMMITTED: return 0;
+            case EMPTY_COMMITTED: return 1;
+            case REGULAR: return 2;
+            case HUMONGOUS: return 3;
+            case CSET: return 5;
+            case PINNED: return 6;
+            case TRASH: return 7;
+            case PINNED_CSET: return 8;
+            case PINNED_HUMONGOUS: return 9;
+            default:
+                throw new IllegalStateException("Unhandled state: " + this);
+        }
+    }
+
 }
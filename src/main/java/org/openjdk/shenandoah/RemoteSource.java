@@ -0,0 +1,106 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Snapshots arriving from one remote collector. Snapshots are pushed to
+ * subscribers as they are decoded; the latest one can also be pulled.
+ * Publishing never blocks the selector thread, which is shared with other
+ * collectors: subscribers that fall more than {@link #BUFFER_SIZE} samples
+ * behind lose samples, and the losses are counted.
+ */
+public class RemoteSource implements SnapshotSource {
+
+    /**
+     * Samples buffered per subscriber, about ten seconds at the default interval.
+     */
+    static final int BUFFER_SIZE = 1024;
+
+    private final String name;
+    private final Runnable onClose;
+    private final SubmissionPublisher<Snapshot> publisher;
+
+    private volatile Closeable owner;
+    private volatile Snapshot last;
+    private volatile boolean connected;
+    private volatile long dropped;
+
+    RemoteSource(String name, Snapshot first, Runnable onClose) {
+        this.name = name;
+        this.onClose = onClose;
+        this.publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), BUFFER_SIZE);
+        this.last = first;
+        this.connected = true;
+    }
+
+    /**
+     * @return name the collector announced, usually its VM identifier
+     */
+    public String name() {
+        return name;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return samples lost by subscribers that fell behind, summed over subscribers
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Makes closing this source also close the given resource.
+     */
+    void ownedBy(Closeable owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Called from the selector thread only.
+     */
+    void publish(Snapshot s) {
+        last = s;
+        int lag = publisher.offer(s, null);
+        if (lag < 0) {
+            dropped -= lag;
+        }
+    }
+
+    void disconnected() {
+        connected = false;
+        publisher.close();
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        return last;
+    }
+
+    @Override
+    public Flow.Publisher<Snapshot> publisher() {
+        return publisher;
+    }
+
+    @Override
+    public String status() {
+        long d = dropped;
+        return "Remote: " + name + (connected ? "" : " (disconnected)") + (d == 0 ? "" : ", " + d + " dropped");
+    }
+
+    @Override
+    public void close() throws IOException {
+        onClose.run();
+        Closeable o = owner;
+        if (o != null) {
+            o.close();
+        }
+    }
+
+}
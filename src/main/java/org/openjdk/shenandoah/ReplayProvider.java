@@ -0,0 +1,162 @@
+package org.openjdk.shenandoah;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Plays back a region recording in place of a live JVM.
+ *
+ * A playback clock maps wall time to recording time at a variable speed,
+ * which may be negative for reverse playback. Each {@link #snapshot()} seeks
+ * to the current clock position: moving forward decodes the frames in
+ * between, anything else restarts from the nearest preceding key frame.
+ *
+ * A seek thus costs a binary search over the key frames, plus decoding one
+ * key frame and at most {@link FrameEncoder#KEY_INTERVAL} - 1 deltas, however
+ * long the recording is. Recordings are indexed when the writer rotates or
+ * closes them; a file left without an index by a crashed recorder is scanned
+ * once when opened.
+ */
+public class ReplayProvider implements SnapshotSource {
+
+    public static final double MIN_SPEED = 0.1;
+    public static final double MAX_SPEED = 100;
+
+    private final MappedRecording rec;
+    private final FrameDecoder decoder;
+
+    // Decoding position
+    private long nextOffset;
+    private long decodedTime;
+
+    // Playback clock
+    private long anchorWall;
+    private long anchorPos;
+    private double speed;
+    private boolean paused;
+    private long jumps;
+
+    public ReplayProvider(Path file) throws IOException {
+        rec = new MappedRecording(file);
+        decoder = new FrameDecoder(rec.regionCount(), rec.regionSize());
+        anchorWall = System.currentTimeMillis();
+        anchorPos = rec.firstTime();
+        speed = 1;
+    }
+
+    @Override
+    public synchronized Snapshot snapshot() {
+        try {
+            return seek(position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Snapshot seek(long target) throws IOException {
+        int key = rec.keyFrameBefore(target);
+        if (decoder.last() == null || target < decodedTime || rec.keyFrameTime(key) > decodedTime) {
+            decoder.reset();
+            decode(rec.keyFrameOffset(key));
+        }
+        while (rec.hasFrame(nextOffset) && rec.frameTime(nextOffset) <= target) {
+            decode(nextOffset);
+        }
+        return decoder.last();
+    }
+
+    private void decode(long offset) throws IOException {
+        decoder.decode(rec.frameAt(offset));
+        decodedTime = decoder.last().time();
+        nextOffset = rec.nextFrame(offset);
+    }
+
+    /**
+     * @return current recording time of the playback clock
+     */
+    public synchronized long position() {
+        long pos = anchorPos;
+        if (!paused) {
+            pos += (long) ((System.currentTimeMillis() - anchorWall) * speed);
+        }
+        return Math.max(rec.firstTime(), Math.min(rec.lastTime(), pos));
+    }
+
+    private void reanchor(long pos) {
+        anchorPos = Math.max(rec.firstTime(), Math.min(rec.lastTime(), pos));
+        anchorWall = System.currentTimeMillis();
+    }
+
+    public synchronized void seekBy(long millis) {
+        reanchor(position() + millis);
+        jumps++;
+    }
+
+    public synchronized void seekTo(long time) {
+        reanchor(time);
+        jumps++;
+    }
+
+    @Override
+    public synchronized long jumps() {
+        return jumps;
+    }
+
+    /**
+     * Pauses playback and moves the clock to the given time without counting
+     * a jump, for stepping through the recording in order, e.g. when exporting it.
+     *
+     * @return snapshot at that time
+     */
+    public synchronized Snapshot advanceTo(long time) {
+        paused = true;
+        reanchor(time);
+        return snapshot();
+    }
+
+    public synchronized void togglePause() {
+        reanchor(position());
+        paused = !paused;
+    }
+
+    /**
+     * Sets the playback speed; negative values play backwards.
+     * The magnitude is clamped to [{@link #MIN_SPEED}, {@link #MAX_SPEED}].
+     */
+    public synchronized void setSpeed(double speed) {
+        reanchor(position());
+        double mag = Math.max(MIN_SPEED, Math.min(MAX_SPEED, Math.abs(speed)));
+        this.speed = Math.copySign(mag, speed);
+    }
+
+    public synchronized double speed() {
+        return speed;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public long firstTime() {
+        return rec.firstTime();
+    }
+
+    public long lastTime() {
+        return rec.lastTime();
+    }
+
+    @Override
+    public synchronized String status() {
+        return String.format("Replay: %.1f / %.1f s at %.1fx%s",
+                (position() - rec.firstTime()) / 1000D,
+                (rec.lastTime() - rec.firstTime()) / 1000D,
+                speed, paused ? " (paused)" : "");
+    }
+
+    @Override
+    public void close() throws IOException {
+        rec.close();
+    }
+
+}
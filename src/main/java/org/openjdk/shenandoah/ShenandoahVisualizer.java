@@ -24,15 +24,29 @@ package org.openjdk.shenandoah;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Flow;
 
 import static org.openjdk.shenandoah.RegionState.*;
 
@@ -41,20 +55,117 @@ class ShenandoahVisualizer {
     private static final int INITIAL_WIDTH = 1000;
     private static final int INITIAL_HEIGHT = 800;
 
+    private static final int DEFAULT_INTERVAL_MS = 100;
+    private static final int DEFAULT_FPS = 20;
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: visualizer [-i|--interval <sampling ms>] [--fps <max refresh rate>] [-v|--verbose] " +
+                "[--record <file> [--max-size <MB>] | --collect <host:port> | --export <dir> | --dashboard] [--discover] " +
+                "<vmid | file://recording | tcp://[host]:port | sim://[options]>...");
+        System.exit(-1);
+    }
+
+    /**
+     * @return value of the option before {@code args[i]}, or prints the usage if it is missing
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            usage("missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+
     public static void main(String[] args) throws Exception {
-        if (args.length < 1) {
-            System.err.println("missing VM identifier");
+        int interval = DEFAULT_INTERVAL_MS;
+        int fps = DEFAULT_FPS;
+        String record = null;
+        String collect = null;
+        String export = null;
+        long maxSize = 0;
+        boolean dashboard = false;
+        boolean discover = false;
+        boolean verbose = false;
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-i":
+                case "--interval":
+                    interval = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--fps":
+                    fps = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--record":
+                    record = value(args, ++i);
+                    break;
+                case "--collect":
+                    collect = value(args, ++i);
+                    break;
+                case "--export":
+                    export = value(args, ++i);
+                    break;
+                case "--max-size":
+                    maxSize = Long.parseLong(value(args, ++i)) * 1024 * 1024;
+                    break;
+                case "--dashboard":
+                    dashboard = true;
+                    break;
+                case "--discover":
+                    discover = true;
+                    break;
+                case "-v":
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    targets.add(args[i]);
+            }
+        }
+
+        if (targets.isEmpty() && !discover) {
+            usage("missing VM identifier");
+        }
+        if (interval < 1 || fps < 1) {
+            System.err.println("sampling interval and refresh rate should be at least 1");
             System.exit(-1);
         }
 
+        if (dashboard || discover || targets.size() > 1) {
+            if (record != null || collect != null || export != null) {
+                usage("--record, --collect and --export take a single VM identifier");
+            }
+            dashboard(targets, discover, interval, fps);
+            return;
+        }
+
+        String vmid = targets.get(0);
+        if (record != null) {
+            record(SnapshotSource.open(vmid), vmid, Paths.get(record), interval, maxSize, verbose);
+            return;
+        }
+        if (collect != null) {
+            collect(SnapshotSource.open(vmid), vmid, StreamServer.address(collect), interval);
+            return;
+        }
+        if (export != null) {
+            export(SnapshotSource.open(vmid), vmid, Paths.get(export), interval, fps, verbose);
+            return;
+        }
+
         JFrame frame = new JFrame();
         frame.setLayout(new GridBagLayout());
         frame.setTitle("Shenandoah GC Visualizer");
         frame.setSize(INITIAL_WIDTH, INITIAL_HEIGHT);
 
-        DataProvider data = new DataProvider(args[0]);
-
-        Render render = new Render(data, frame);
+        SnapshotSource source = SnapshotSource.open(vmid);
+        Render render = new Render(source, frame, interval);
+        if (verbose) {
+            reportStartup(vmid, source);
+        }
+        if (source instanceof ReplayProvider) {
+            bindReplayKeys(frame.getRootPane(), (ReplayProvider) source);
+        }
 
         JPanel regionsPanel = new JPanel() {
             public void paint(Graphics g) {
@@ -95,6 +206,44 @@ class ShenandoahVisualizer {
             }
         });
 
+        graphPanel.addMouseWheelListener(ev -> {
+            render.zoomGraph(ev.getWheelRotation());
+            graphPanel.repaint();
+        });
+
+        regionsPanel.addMouseWheelListener(ev -> {
+            render.zoomRegions(ev.getWheelRotation(), ev.getX(), ev.getY());
+            regionsPanel.repaint();
+        });
+
+        MouseAdapter regionsDrag = new MouseAdapter() {
+            int lastX, lastY;
+
+            @Override
+            public void mousePressed(MouseEvent ev) {
+                lastX = ev.getX();
+                lastY = ev.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent ev) {
+                render.panRegions(ev.getX() - lastX, ev.getY() - lastY);
+                lastX = ev.getX();
+                lastY = ev.getY();
+                regionsPanel.repaint();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent ev) {
+                if (ev.getClickCount() == 2) {
+                    render.resetRegions();
+                    regionsPanel.repaint();
+                }
+            }
+        };
+        regionsPanel.addMouseListener(regionsDrag);
+        regionsPanel.addMouseMotionListener(regionsDrag);
+
         Insets pad = new Insets(10, 10, 10, 10);
 
         {
@@ -143,54 +292,513 @@ class ShenandoahVisualizer {
 
         frame.setVisible(true);
 
-        ScheduledExecutorService service = Executors.newScheduledThreadPool(1);
-        ScheduledFuture<?> f = service.scheduleAtFixedRate(render,
-                0, 100, TimeUnit.MILLISECONDS);
+        ScheduledExecutorService service = Executors.newScheduledThreadPool(2);
+        ScheduledFuture<?> f = service.scheduleAtFixedRate(render::refresh,
+                0, 1_000_000 / fps, TimeUnit.MICROSECONDS);
+        Flow.Publisher<Snapshot> publisher = source.publisher();
+        if (publisher != null) {
+            publisher.subscribe(render);
+        } else {
+            service.scheduleAtFixedRate(render,
+                    0, interval, TimeUnit.MILLISECONDS);
+        }
 
         frame.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {
                 service.shutdown();
                 frame.dispose();
+                try {
+                    source.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+
+        try {
+            f.get();
+        } catch (CancellationException e) {
+            // Window closed
+        }
+    }
+
+    /**
+     * Playback controls: space pauses, left/right seek by 10 s (60 s with shift),
+     * up/down double or halve the speed, R reverses the direction.
+     */
+    private static void bindReplayKeys(JRootPane root, ReplayProvider replay) {
+        InputMap im = root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        ActionMap am = root.getActionMap();
+        bind(im, am, "SPACE", replay::togglePause);
+        bind(im, am, "LEFT", () -> replay.seekBy(-10_000));
+        bind(im, am, "RIGHT", () -> replay.seekBy(10_000));
+        bind(im, am, "shift LEFT", () -> replay.seekBy(-60_000));
+        bind(im, am, "shift RIGHT", () -> replay.seekBy(60_000));
+        bind(im, am, "UP", () -> replay.setSpeed(replay.speed() * 2));
+        bind(im, am, "DOWN", () -> replay.setSpeed(replay.speed() / 2));
+        bind(im, am, "R", () -> replay.setSpeed(-replay.speed()));
+    }
+
+    private static void bind(InputMap im, ActionMap am, String key, Runnable action) {
+        im.put(KeyStroke.getKeyStroke(key), key);
+        am.put(key, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Prints how long attaching took, for -v.
+     */
+    private static void reportStartup(String vmid, SnapshotSource source) {
+        if (source instanceof DataProvider) {
+            DataProvider data = (DataProvider) source;
+            System.err.printf("Attached to %s: %d regions, counters resolved in %d ms, first frame after %d ms%n",
+                    vmid, data.regionCount(),
+                    TimeUnit.NANOSECONDS.toMillis(data.attachNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(data.timeToFirstFrameNanos()));
+        }
+    }
+
+    /**
+     * Shows all targets in one window. Every tcp:// target listens for any
+     * number of collectors, which come and go as tiles. With discovery, local
+     * Shenandoah JVMs are added and removed as they start and exit.
+     */
+    private static void dashboard(List<String> targets, boolean discover, int interval, int fps) throws Exception {
+        Dashboard dashboard = new Dashboard(interval);
+        List<StreamServer> servers = new ArrayList<>();
+        for (String target : targets) {
+            if (target.startsWith(SnapshotSource.TCP_SCHEME)) {
+                InetSocketAddress address = StreamServer.address(target.substring(SnapshotSource.TCP_SCHEME.length()));
+                servers.add(new StreamServer(address, s -> dashboard.add(s.name(), s)));
+            } else {
+                dashboard.add(target, SnapshotSource.open(target));
+            }
+        }
+
+        Discovery discovery = !discover ? null : new Discovery(new Discovery.Listener() {
+            @Override
+            public void attach(int pid) {
+                String vmid = "local://" + pid;
+                if (targets.contains(vmid)) {
+                    return;
+                }
+                try {
+                    dashboard.add(vmid, new DataProvider(vmid));
+                } catch (Exception e) {
+                    System.err.println("Cannot attach to " + vmid + ": " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void detach(int pid) {
+                dashboard.remove("local://" + pid);
             }
         });
 
-        f.get();
+        JFrame frame = new JFrame();
+        frame.setTitle("Shenandoah GC Visualizer: Dashboard");
+        frame.setSize(INITIAL_WIDTH, INITIAL_HEIGHT);
+        JPanel panel = new JPanel() {
+            @Override
+            public void paint(Graphics g) {
+                dashboard.render(g, getWidth(), getHeight());
+            }
+        };
+        frame.add(panel);
+
+        CountDownLatch closed = new CountDownLatch(1);
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                try {
+                    if (discovery != null) {
+                        discovery.close();
+                    }
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+                dashboard.shutdown();
+                for (StreamServer s : servers) {
+                    try {
+                        s.close();
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+                frame.dispose();
+                closed.countDown();
+            }
+        });
+
+        frame.setVisible(true);
+        dashboard.start(panel, fps);
+        closed.await();
+    }
+
+    /**
+     * Headless recorder: samples at the given interval and appends every sample
+     * to the recording, until the process is stopped.
+     */
+    private static void record(SnapshotSource source, String name, Path file, int interval, long maxSize, boolean verbose) throws Exception {
+        Snapshot first = source.snapshot();
+        if (verbose) {
+            reportStartup(name, source);
+        }
+        RecordingWriter writer = new RecordingWriter(file, first.regionCount(), first.regionSize(), maxSize);
+        writer.write(first);
+
+        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+        ScheduledFuture<?> f = service.scheduleAtFixedRate(() -> {
+            try {
+                writer.write(source.snapshot());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.shutdown();
+            try {
+                service.awaitTermination(1, TimeUnit.SECONDS);
+                writer.close();
+            } catch (InterruptedException | IOException e) {
+                e.printStackTrace();
+            }
+            System.err.println("Recorded " + writer.frames() + " frames to " + file);
+        }));
+
+        System.err.println("Recording to " + file + ", press Ctrl-C to stop");
+        try {
+            f.get();
+        } catch (CancellationException e) {
+            // Stopped by the shutdown hook
+        }
+    }
+
+    /**
+     * Headless collector: samples at the given interval and streams every sample
+     * to a remote viewer, reconnecting whenever the connection breaks.
+     */
+    private static void collect(SnapshotSource source, String name, InetSocketAddress viewer, int interval) throws Exception {
+        StreamCollector collector = new StreamCollector(viewer, name);
+
+        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+        ScheduledFuture<?> f = service.scheduleAtFixedRate(() -> {
+            try {
+                collector.send(source.snapshot());
+            } catch (IOException e) {
+                System.err.println("Cannot send to " + viewer + ": " + e.getMessage());
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.shutdown();
+            try {
+                service.awaitTermination(1, TimeUnit.SECONDS);
+                collector.close();
+            } catch (InterruptedException | IOException e) {
+                e.printStackTrace();
+            }
+        }));
+
+        System.err.println("Streaming " + name + " to " + viewer + ", press Ctrl-C to stop");
+        try {
+            f.get();
+        } catch (CancellationException e) {
+            // Stopped by the shutdown hook
+        }
+    }
+
+    /**
+     * Headless exporter: samples at the given interval, and renders the full
+     * window layout into PNG frames at the given frame rate, until the process
+     * is stopped. Frames are dropped while the encoders are busy.
+     * Recordings are exported with {@link #exportRecording} instead.
+     */
+    private static void export(SnapshotSource source, String name, Path dir, int interval, int fps, boolean verbose) throws Exception {
+        if (source instanceof ReplayProvider) {
+            System.err.println("Exporting frames to " + dir);
+            long written = exportRecording((ReplayProvider) source, dir, interval, fps);
+            source.close();
+            System.err.println("Exported " + written + " frames to " + dir);
+            return;
+        }
+
+        Files.createDirectories(dir);
+        Render render = new Render(source, null, interval);
+        if (verbose) {
+            reportStartup(name, source);
+        }
+        render.layout(INITIAL_WIDTH, INITIAL_HEIGHT);
+        FrameExporter exporter = new FrameExporter(dir, INITIAL_WIDTH, INITIAL_HEIGHT, fps);
+
+        ScheduledExecutorService service = Executors.newScheduledThreadPool(2);
+        Flow.Publisher<Snapshot> publisher = source.publisher();
+        if (publisher != null) {
+            publisher.subscribe(render);
+        } else {
+            service.scheduleAtFixedRate(render, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        ScheduledFuture<?> f = service.scheduleAtFixedRate(() -> {
+            BufferedImage img = exporter.acquire();
+            if (img != null) {
+                Graphics2D g = img.createGraphics();
+                render.renderFrame(g, INITIAL_WIDTH, INITIAL_HEIGHT);
+                g.dispose();
+                exporter.submit(img);
+            }
+        }, 0, 1_000_000 / fps, TimeUnit.MICROSECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.shutdown();
+            try {
+                service.awaitTermination(1, TimeUnit.SECONDS);
+                exporter.close();
+                source.close();
+            } catch (InterruptedException | IOException e) {
+                e.printStackTrace();
+            }
+            System.err.println("Exported " + exporter.written() + " frames to " + dir +
+                    ", dropped " + exporter.dropped());
+        }));
+
+        System.err.println("Exporting frames to " + dir + ", press Ctrl-C to stop");
+        try {
+            f.get();
+        } catch (CancellationException e) {
+            // Stopped by the shutdown hook
+        }
+    }
+
+    /**
+     * Postmortem exporter: steps through the recording in recording time,
+     * sampling at the given interval and rendering a frame every 1/fps
+     * seconds of it, and stops at its end. Runs as fast as frames can be
+     * rendered and encoded, and waits for the encoders instead of dropping.
+     *
+     * @return number of frames written
+     */
+    static long exportRecording(ReplayProvider replay, Path dir, int interval, int fps) throws Exception {
+        Files.createDirectories(dir);
+        Render render = new Render(replay, null, interval);
+        render.layout(INITIAL_WIDTH, INITIAL_HEIGHT);
+        FrameExporter exporter = new FrameExporter(dir, INITIAL_WIDTH, INITIAL_HEIGHT, fps);
+        try {
+            long first = replay.firstTime();
+            long sample = first;
+            for (long frame = 0; first + frame * 1000 / fps <= replay.lastTime(); frame++) {
+                long time = first + frame * 1000 / fps;
+                for (; sample <= time; sample += interval) {
+                    render.accept(replay.advanceTo(sample));
+                }
+                BufferedImage img = exporter.take();
+                Graphics2D g = img.createGraphics();
+                render.renderFrame(g, INITIAL_WIDTH, INITIAL_HEIGHT);
+                g.dispose();
+                exporter.submit(img);
+            }
+        } finally {
+            exporter.close();
+        }
+        return exporter.written();
     }
 
-    public static class Render implements Runnable {
+    /**
+     * Samples a snapshot source and renders the result. Pull sources are
+     * sampled by scheduling {@link #run()}; push sources deliver snapshots
+     * through the {@link Flow.Subscriber} side.
+     */
+    public static class Render implements Runnable, Flow.Subscriber<Snapshot> {
         public static final int LINE = 20;
+        public static final int HISTORY_PERIOD_MS = 100;
+        public static final long MIN_GRAPH_WINDOW_MS = 10_000;
+
+        private static final int PAD = 10;
+
+        private static final Phase[] PHASES = Phase.values();
 
-        final DataProvider data;
+        final SnapshotSource source;
         final JFrame frame;
+        final int interval;
 
-        int regionWidth, regionHeight;
-        int graphWidth, graphHeight;
+        final RegionMap regionMap;
+        volatile int graphWidth, graphHeight;
+        volatile long graphWindow;
 
-        final LinkedList<SnapshotView> lastSnapshots;
+        volatile TieredHistory history;
         volatile Snapshot snapshot;
 
-        public Render(DataProvider data, JFrame frame) {
-            this.data = data;
+        // Frames published by the sampler, and how many of them painting skipped.
+        // Painting runs on the EDT, or on the export thread when exporting.
+        volatile long frames;
+        long refreshedFrames;
+        volatile long paintedFrames;
+        volatile long coalesced;
+
+        // Samples folded into the next history entry, sampler thread only
+        long foldStart = -1;
+        Phase foldPhase;
+        long foldUsed, foldLive, foldHumongous, foldCset, foldTrash;
+        long lastTime;
+
+        // Graph clock: advances by the time between samples in either direction,
+        // so reverse playback extends the graph instead of folding back into it
+        long graphTime = -1;
+        long lastJumps;
+
+        public Render(SnapshotSource source, JFrame frame, int interval) {
+            this.source = source;
             this.frame = frame;
-            this.lastSnapshots = new LinkedList<>();
-            this.snapshot = data.snapshot();
+            this.interval = interval;
+            this.history = new TieredHistory(Math.max(interval, HISTORY_PERIOD_MS));
+            this.regionMap = new RegionMap();
+            this.snapshot = source.snapshot();
+        }
+
+        /**
+         * Samples the data provider and publishes the result. Never waits for painting:
+         * painting picks up the latest snapshot on the next {@link #refresh()}, and the
+         * intermediate frames are coalesced.
+         *
+         * When sampling faster than {@link #HISTORY_PERIOD_MS}, samples are folded into
+         * a single history entry that keeps the peak of every graphed figure and any
+         * non-idle phase seen, so that short phases and spikes still show up in the graph.
+         */
+        @Override
+        public void run() {
+            accept(source.snapshot());
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Snapshot item) {
+            accept(item);
         }
 
         @Override
-        public synchronized void run() {
-            Snapshot cur = data.snapshot();
-            if (!cur.equals(snapshot)) {
-                snapshot = cur;
-                lastSnapshots.add(new SnapshotView(cur));
-                if (lastSnapshots.size() > graphWidth) {
-                    lastSnapshots.removeFirst();
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+        }
+
+        @Override
+        public void onComplete() {
+            // keep showing the last snapshot
+        }
+
+        /**
+         * Publishes a new snapshot. Called from a single thread at a time,
+         * either the sampling thread or the publisher of a push source.
+         */
+        public void accept(Snapshot cur) {
+            snapshot = cur;
+
+            long jumps = source.jumps();
+            if (jumps != lastJumps) {
+                // The source jumped, e.g. a seek in a replay: the graph starts over
+                history = new TieredHistory(Math.max(interval, HISTORY_PERIOD_MS));
+                foldStart = -1;
+                graphTime = -1;
+                lastJumps = jumps;
+            }
+            graphTime = (graphTime < 0) ? cur.time() : graphTime + Math.abs(cur.time() - lastTime);
+            lastTime = cur.time();
+
+            if (foldStart < 0) {
+                foldStart = graphTime;
+                foldPhase = cur.phase();
+                foldUsed = cur.used();
+                foldLive = cur.live();
+                foldHumongous = cur.humongous();
+                foldCset = cur.collectionSet();
+                foldTrash = cur.trash();
+            } else {
+                if (cur.phase() != Phase.IDLE) {
+                    foldPhase = cur.phase();
                 }
+                foldUsed = Math.max(foldUsed, cur.used());
+                foldLive = Math.max(foldLive, cur.live());
+                foldHumongous = Math.max(foldHumongous, cur.humongous());
+                foldCset = Math.max(foldCset, cur.collectionSet());
+                foldTrash = Math.max(foldTrash, cur.trash());
+            }
+
+            boolean appended = false;
+            if (graphTime - foldStart + interval >= HISTORY_PERIOD_MS) {
+                history.add(new SnapshotView(cur, graphTime, foldPhase, foldUsed, foldLive, foldHumongous, foldCset, foldTrash));
+                foldStart = -1;
+                appended = true;
+            }
+
+            if (appended || !cur.delta().isEmpty()) {
+                frames++;
+            }
+        }
+
+        /**
+         * Requests a repaint if anything was published since the last refresh.
+         * Called at the capped display rate, independently of sampling.
+         */
+        public void refresh() {
+            long f = frames;
+            if (f != refreshedFrames && frame != null) {
+                refreshedFrames = f;
                 frame.repaint();
             }
         }
 
-        public synchronized void renderGraph(Graphics g) {
-            if (lastSnapshots.size() < 2) return;
+        /**
+         * Zooms the graph time window in or out by powers of two.
+         */
+        public void zoomGraph(int notches) {
+            long window = graphWindow();
+            window = (notches > 0) ? window << notches : window >> -notches;
+            graphWindow = Math.max(MIN_GRAPH_WINDOW_MS, Math.min(history.maxWindow(), window));
+        }
+
+        private long graphWindow() {
+            long window = graphWindow;
+            return (window > 0) ? window : Math.max(MIN_GRAPH_WINDOW_MS, graphWidth * history.raw().nominalPeriod());
+        }
+
+        private static Color phaseColor(Phase phase) {
+            switch (phase) {
+                case IDLE:
+                    return Colors.TIMELINE_IDLE;
+                case MARKING:
+                    return Colors.TIMELINE_MARK;
+                case EVACUATING:
+                    return Colors.TIMELINE_EVACUATING;
+                case UPDATE_REFS:
+                    return Colors.TIMELINE_UPDATEREFS;
+                case TRAVERSAL:
+                    return Colors.TIMELINE_TRAVERSAL;
+                default:
+                    return Color.WHITE;
+            }
+        }
+
+        public void renderGraph(Graphics g) {
+            int width = graphWidth;
+            long window = graphWindow();
+            SnapshotHistory h = history.select(window, width);
+
+            long end = h.end();
+            int size = h.size(end);
+            if (size < 2) return;
+
+            long lastTime = h.time(end - 1);
+            long start = end - 1;
+            while (start > end - size && h.time(start - 1) >= lastTime - window) {
+                start--;
+            }
+            if (end - start < 2) return;
 
             int pad = 10;
             int bandHeight = (graphHeight - pad) / 2;
@@ -200,60 +808,68 @@ class ShenandoahVisualizer {
             int startRaw  = graphHeight - bandHeight - pad;
 
             g.setColor(Color.WHITE);
-            g.fillRect(0, 0, graphWidth, graphHeight);
+            g.fillRect(0, 0, width, graphHeight);
 
             g.setColor(Color.BLACK);
-            g.fillRect(0, 0, graphWidth, bandHeight);
-            g.fillRect(0, bandHeight + pad, graphWidth, bandHeight);
-
-            long firstTime = lastSnapshots.getFirst().time();
-            long lastTime = lastSnapshots.getLast().time();
-            double stepX = 1D * Math.min(lastSnapshots.size(), graphWidth) / (lastTime - firstTime);
-
-            for (int i = 0; i < lastSnapshots.size(); i++) {
-                SnapshotView s = lastSnapshots.get(i);
-                int x = (int) Math.round((s.time() - firstTime) * stepX);
-
-                switch (s.phase()) {
-                    case IDLE:
-                        g.setColor(Colors.TIMELINE_IDLE);
-                        break;
-                    case MARKING:
-                        g.setColor(Colors.TIMELINE_MARK);
-                        break;
-                    case EVACUATING:
-                        g.setColor(Colors.TIMELINE_EVACUATING);
-                        break;
-                    case UPDATE_REFS:
-                        g.setColor(Colors.TIMELINE_UPDATEREFS);
-                        break;
-                    case TRAVERSAL:
-                        g.setColor(Colors.TIMELINE_TRAVERSAL);
-                        break;
-                    default:
-                        g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, bandHeight);
+            g.fillRect(0, bandHeight + pad, width, bandHeight);
+
+            long firstTime = h.time(start);
+            double stepX = 1D * Math.min(end - start, width) / (lastTime - firstTime);
+
+            for (long seq = start; seq < end; seq++) {
+                int x = (int) Math.round((h.time(seq) - firstTime) * stepX);
+
+                if (h.period() == 0) {
+                    g.setColor(phaseColor(h.phase(seq)));
+                    g.drawRect(x, 0, 1, bandHeight);
+                    g.drawRect(x, bandHeight + pad, 1, bandHeight);
+                } else {
+                    // Stack the phases seen in the bucket by their occupancy
+                    int y = 0;
+                    for (Phase p : PHASES) {
+                        int ph = Math.round(h.phaseOccupancy(seq, p) * bandHeight);
+                        if (ph > 0) {
+                            g.setColor(phaseColor(p));
+                            g.fillRect(x, y, 2, ph);
+                            g.fillRect(x, bandHeight + pad + y, 2, ph);
+                            y += ph;
+                        }
+                    }
                 }
-                g.drawRect(x, 0, 1, bandHeight);
-                g.drawRect(x, bandHeight + pad, 1, bandHeight);
 
+                int usedTop = (int) Math.round(startRaw - h.max(SnapshotHistory.USED, seq) * stepY);
+                int usedBottom = (int) Math.round(startRaw - h.min(SnapshotHistory.USED, seq) * stepY);
                 g.setColor(Colors.USED);
-                g.drawRect(x, (int) Math.round(startRaw - s.used() * stepY), 1, 1);
+                g.drawRect(x, usedTop, 1, Math.max(1, usedBottom - usedTop));
                 g.setColor(Colors.LIVE_REGULAR);
-                g.drawRect(x, (int) Math.round(startRaw - s.live() * stepY), 1, 1);
+                g.drawRect(x, (int) Math.round(startRaw - h.live(seq) * stepY), 1, 1);
                 g.setColor(Colors.LIVE_CSET);
-                g.drawRect(x, (int) Math.round(startRaw - s.collectionSet() * stepY), 1, 1);
+                g.drawRect(x, (int) Math.round(startRaw - h.collectionSet(seq) * stepY), 1, 1);
 
-                final int smooth = Math.min(10, i + 1);
+                final int smooth = h.allocSpan(seq);
                 final int mult = 50;
 
-                SnapshotView ls = lastSnapshots.get(i - smooth + 1);
-
                 g.setColor(Colors.USED);
-                g.drawRect(x, (int) Math.round(startDiff - (s.used() - ls.used()) * stepY * mult / smooth), 1, 1);
+                g.drawRect(x, (int) Math.round(startDiff - h.allocSum(seq) * stepY * mult / smooth), 1, 1);
+            }
+
+            g.setColor(Color.WHITE);
+            g.drawString("Last " + formatDuration(lastTime - firstTime), 5, LINE);
+        }
+
+        private static String formatDuration(long millis) {
+            long sec = millis / 1000;
+            if (sec < 120) {
+                return sec + " s";
+            } else if (sec < 2 * 3600) {
+                return (sec / 60) + " min";
+            } else {
+                return (sec / 3600) + " h";
             }
         }
 
-        public synchronized static void renderLegend(Graphics g) {
+        public static void renderLegend(Graphics g) {
             final int sqSize = LINE;
 
             Map<String, RegionStat> items = new LinkedHashMap<>();
@@ -316,42 +932,17 @@ class ShenandoahVisualizer {
             }
         }
 
-        public synchronized void renderRegions(Graphics g) {
-            int area = regionWidth * regionHeight;
-            int sqSize = Math.max(1, (int) Math.sqrt(1D * area / snapshot.regionCount()));
-            int cols = regionWidth / sqSize;
-            int cellSize = sqSize - 2;
-
-            for (int i = 0; i < snapshot.regionCount(); i++) {
-                int rectx = (i % cols) * sqSize;
-                int recty = (i / cols) * sqSize;
-
-                RegionStat s = snapshot.get(i);
-                s.render(g, rectx, recty, cellSize, cellSize);
-            }
-
-            Color BASE = new Color(0, 0, 0, 20);
-
-            for (int f = 0; f < snapshot.regionCount(); f++) {
-                RegionStat s = snapshot.get(f);
-                BitSet bs = s.incoming();
-                if (bs != null) {
-                    for (int t = 0; t < snapshot.regionCount(); t++) {
-                        if (bs.get(t)) {
-                            int f_rectx = (int) ((f % cols + 0.5) * sqSize);
-                            int f_recty = (int) ((f / cols + 0.5) * sqSize);
-                            int t_rectx = (int) ((t % cols + 0.5) * sqSize);
-                            int t_recty = (int) ((t / cols + 0.5) * sqSize);
-
-                            g.setColor(BASE);
-                            g.drawLine(f_rectx, f_recty, t_rectx, t_recty);
-                        }
-                    }
-                }
+        public void renderRegions(Graphics g) {
+            long f = frames;
+            if (f > paintedFrames + 1) {
+                coalesced += f - paintedFrames - 1;
             }
+            paintedFrames = Math.max(paintedFrames, f);
+            regionMap.render(g, snapshot);
         }
 
-        public synchronized void renderStats(Graphics g) {
+        public void renderStats(Graphics g) {
+            Snapshot snapshot = this.snapshot;
             String status = "";
             switch (snapshot.phase()) {
                 case IDLE:
@@ -378,14 +969,62 @@ class ShenandoahVisualizer {
             g.drawString("Total: " + (snapshot.total() / K) + " MB", 0, 2 * LINE);
             g.drawString("Used: " + (snapshot.used() / K) + " MB", 0, 3 * LINE);
             g.drawString("Live: " + (snapshot.live() / K) + " MB", 0, 4 * LINE);
+            g.drawString("Coalesced: " + coalesced + " frames", 0, 5 * LINE);
+            String sourceStatus = source.status();
+            if (sourceStatus != null) {
+                g.drawString(sourceStatus, 0, 6 * LINE);
+            }
+        }
+
+        /**
+         * Sizes the areas of a window of the given size, laid out like the
+         * window: graph above regions on the left, stats above legend on the right.
+         */
+        public void layout(int width, int height) {
+            notifyGraphResized(width * 3 / 4 - 2 * PAD, height / 5 - 2 * PAD);
+            notifyRegionResized(width * 3 / 4 - 2 * PAD, height - height / 5 - 2 * PAD);
+        }
+
+        /**
+         * Paints all areas into one image, as laid out by {@link #layout(int, int)}.
+         * Must be called from one thread at a time.
+         */
+        public void renderFrame(Graphics g, int width, int height) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            int left = width * 3 / 4;
+            int top = height / 5;
+            Graphics area = g.create(PAD, PAD, left - 2 * PAD, top - 2 * PAD);
+            renderGraph(area);
+            area.dispose();
+            area = g.create(PAD, top + PAD, left - 2 * PAD, height - top - 2 * PAD);
+            renderRegions(area);
+            area.dispose();
+            area = g.create(left + PAD, PAD, width - left - 2 * PAD, top - 2 * PAD);
+            renderStats(area);
+            area.dispose();
+            area = g.create(left + PAD, top + PAD, width - left - 2 * PAD, height - top - 2 * PAD);
+            renderLegend(area);
+            area.dispose();
+        }
+
+        public void notifyRegionResized(int width, int height) {
+            regionMap.resize(width, height);
+        }
+
+        public void zoomRegions(int notches, int x, int y) {
+            regionMap.zoom(notches, x, y);
+        }
+
+        public void panRegions(int dx, int dy) {
+            regionMap.pan(dx, dy);
         }
 
-        public synchronized void notifyRegionResized(int width, int height) {
-            this.regionWidth = width;
-            this.regionHeight = height;
+        public void resetRegions() {
+            regionMap.resetView();
         }
 
-        public synchronized void notifyGraphResized(int width, int height) {
+        public void notifyGraphResized(int width, int height) {
             this.graphWidth = width;
             this.graphHeight = height;
         }
@@ -1,47 +1,143 @@
 package org.openjdk.shenandoah;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.Objects;
 
+/**
+ * Region data for a single sample, kept as the packed region words
+ * rather than as per-region objects.
+ */
 public class Snapshot {
 
+    private static final RegionState[] STATES = RegionState.values();
+
     private final long time;
     private final long regionSize;
-    private final List<RegionStat> stats;
+    private final long[] data;
+    private final ConnectionMatrix matrix;
+    private final int status;
     private final Phase phase;
+    private final Totals totals;
+    private final SnapshotDelta delta;
 
-    public Snapshot(long time, long regionSize, List<RegionStat> stats, int status) {
+    /**
+     * @param data packed region words, owned by the snapshot from now on
+     * @param matrix region connections, or null if the matrix is not published
+     */
+    public Snapshot(long time, long regionSize, long[] data, ConnectionMatrix matrix, int status) {
         this.time = time;
         this.regionSize = regionSize;
-        this.stats = stats;
+        this.data = data;
+        this.matrix = matrix;
+        this.status = status;
+        this.phase = toPhase(status);
+        this.totals = new Totals(data);
+        this.delta = SnapshotDelta.full(data.length);
+    }
+
+    /**
+     * Creates the snapshot that follows {@code prev}, computing the delta against it.
+     * Aggregates are derived from the previous ones by only visiting changed regions,
+     * and unchanged region words and connections are shared with {@code prev}.
+     *
+     * @param data packed region words; only read, the snapshot keeps its own copy if needed
+     * @param matrix region connections, or null if the matrix is not published
+     */
+    public Snapshot(Snapshot prev, long time, long[] data, ConnectionMatrix matrix, int status) {
+        this.time = time;
+        this.regionSize = prev.regionSize;
+        this.status = status;
+        this.phase = toPhase(status);
+
+        if (prev.data.length != data.length) {
+            this.data = data.clone();
+            this.matrix = matrix;
+            this.totals = new Totals(data);
+            this.delta = SnapshotDelta.full(data.length);
+            return;
+        }
+
+        int[] changed = SnapshotDelta.diff(prev.data, data);
+        if (changed.length == 0) {
+            this.data = prev.data;
+            this.totals = prev.totals;
+        } else {
+            this.data = data.clone();
+            this.totals = new Totals(prev.totals);
+            for (int idx : changed) {
+                totals.remove(prev.data[idx]);
+                totals.add(data[idx]);
+            }
+        }
 
+        boolean matrixChanged = !Objects.equals(prev.matrix, matrix);
+        this.matrix = matrixChanged ? matrix : prev.matrix;
+
+        this.delta = new SnapshotDelta(changed,
+                prev.phase != phase,
+                !totals.equals(prev.totals),
+                matrixChanged);
+    }
+
+    private static Phase toPhase(int status) {
         switch (status) {
             case 0x0:
-                this.phase = Phase.IDLE;
-                break;
+                return Phase.IDLE;
             case 0x1:
-                this.phase = Phase.MARKING;
-                break;
+                return Phase.MARKING;
             case 0x2:
-                this.phase = Phase.EVACUATING;
-                break;
+                return Phase.EVACUATING;
             case 0x4:
-                this.phase = Phase.UPDATE_REFS;
-                break;
+                return Phase.UPDATE_REFS;
             case 0x8:
-                this.phase = Phase.TRAVERSAL;
-                break;
+                return Phase.TRAVERSAL;
             default:
-                this.phase = Phase.UNKNOWN;
-                break;
+                return Phase.UNKNOWN;
         }
     }
 
+    /**
+     * @return changes against the previous sample; a full delta for the first one
+     */
+    public SnapshotDelta delta() {
+        return delta;
+    }
+
+    long[] data() {
+        return data;
+    }
+
+    /**
+     * @return true if both snapshots have the same region counts and usage sums per state
+     */
+    boolean sameAggregates(Snapshot other) {
+        return totals.equals(other.totals);
+    }
+
+    /**
+     * @return region connections, or null if the matrix is not published
+     */
+    public ConnectionMatrix matrix() {
+        return matrix;
+    }
+
     public Phase phase() {
         return phase;
     }
 
+    /**
+     * @return raw status counter the phase was decoded from
+     */
+    public int status() {
+        return status;
+    }
+
+    public long regionSize() {
+        return regionSize;
+    }
+
     public RegionStat get(int i) {
-        return stats.get(i);
+        return new RegionStat(data[i], (matrix == null) ? null : matrix.row(i));
     }
 
     public long time() {
@@ -55,76 +151,138 @@ public class Snapshot {
 
         Snapshot snapshot = (Snapshot) o;
 
-        if (time != snapshot.time) return false;
-        if (!stats.equals(snapshot.stats)) return false;
+        if (!Arrays.equals(data, snapshot.data)) return false;
+        if (!Objects.equals(matrix, snapshot.matrix)) return false;
         return phase == snapshot.phase;
     }
 
     @Override
     public int hashCode() {
-        int result = (int) (time ^ (time >>> 32));
-        result = 31 * result + stats.hashCode();
+        int result = Arrays.hashCode(data);
+        result = 31 * result + Objects.hashCode(matrix);
         result = 31 * result + phase.hashCode();
         return result;
     }
 
     public int regionCount() {
-        return stats.size();
+        return data.length;
     }
 
     public long total() {
         return regionSize * regionCount();
     }
 
+    /**
+     * @return number of regions in the given state
+     */
+    public int regionCount(RegionState state) {
+        return totals.counts[state.ordinal()];
+    }
+
+    /**
+     * @return used bytes in regions of the given state
+     */
+    public long used(RegionState state) {
+        return toBytes(totals.usedPct[state.ordinal()]);
+    }
+
     public long used() {
-        long used = 0L;
-        for (RegionStat rs : stats) {
-            used += regionSize * rs.used();
-        }
-        return used;
+        return toBytes(totals.allUsedPct);
     }
 
     public long committed() {
-        long r = 0L;
-        for (RegionStat rs : stats) {
-            r += (rs.state() == RegionState.EMPTY_UNCOMMITTED) ? 0 : regionSize * rs.used();
-        }
-        return r;
+        return used() - used(RegionState.EMPTY_UNCOMMITTED);
     }
 
     public long trash() {
-        long r = 0L;
-        for (RegionStat rs : stats) {
-            r += (rs.state() == RegionState.TRASH) ? rs.used() : 0;
-        }
-        return r;
+        return used(RegionState.TRASH);
     }
 
     public long collectionSet() {
-        long used = 0L;
-        for (RegionStat rs : stats) {
-            if (rs.state() == RegionState.CSET || rs.state() == RegionState.PINNED_CSET) {
-                used += regionSize * rs.live();
-            }
-        }
-        return used;
+        return toBytes(totals.csetLivePct);
     }
 
     public long humongous() {
-        long used = 0L;
-        for (RegionStat rs : stats) {
-            if (rs.state() == RegionState.HUMONGOUS || rs.state() == RegionState.PINNED_HUMONGOUS) {
-                used += regionSize * rs.used();
-            }
-        }
-        return used;
+        return used(RegionState.HUMONGOUS) + used(RegionState.PINNED_HUMONGOUS);
     }
 
     public long live() {
-        long live = 0L;
-        for (RegionStat rs : stats) {
-            live += regionSize * rs.live();
+        return toBytes(totals.livePct);
+    }
+
+    private long toBytes(long percents) {
+        return regionSize * percents / 100;
+    }
+
+    /**
+     * Aggregates kept as sums of region percents, so they can be updated
+     * region by region without accumulating rounding errors.
+     */
+    private static class Totals {
+        final int[] counts;
+        final long[] usedPct;
+        long allUsedPct;
+        long livePct;
+        long csetLivePct;
+
+        Totals(long[] data) {
+            counts = new int[STATES.length];
+            usedPct = new long[STATES.length];
+            for (long d : data) {
+                add(d);
+            }
+        }
+
+        Totals(Totals other) {
+            counts = other.counts.clone();
+            usedPct = other.usedPct.clone();
+            allUsedPct = other.allUsedPct;
+            livePct = other.livePct;
+            csetLivePct = other.csetLivePct;
+        }
+
+        void add(long d) {
+            account(d, 1);
+        }
+
+        void remove(long d) {
+            account(d, -1);
+        }
+
+        private void account(long d, int sign) {
+            RegionState s = RegionStat.state(d);
+            int used = RegionStat.usedPercent(d) * sign;
+            int live = RegionStat.livePercent(d) * sign;
+            counts[s.ordinal()] += sign;
+            usedPct[s.ordinal()] += used;
+            allUsedPct += used;
+            livePct += live;
+            if (s == RegionState.CSET || s == RegionState.PINNED_CSET) {
+                csetLivePct += live;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Totals that = (Totals) o;
+
+            if (allUsedPct != that.allUsedPct) return false;
+            if (livePct != that.livePct) return false;
+            if (csetLivePct != that.csetLivePct) return false;
+            if (!Arrays.equals(counts, that.counts)) return false;
+            return Arrays.equals(usedPct, that.usedPct);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(counts);
+            result = 31 * result + Arrays.hashCode(usedPct);
+            result = 31 * result + Long.hashCode(livePct);
+            result = 31 * result + Long.hashCode(csetLivePct);
+            return result;
         }
-        return live;
     }
 }
@@ -0,0 +1,119 @@
+package org.openjdk.shenandoah;
+
+import java.util.Arrays;
+
+/**
+ * Changes between two consecutive snapshots: the indices of regions whose
+ * words differ, and whether the phase, the aggregates or the connection
+ * matrix moved.
+ */
+public class SnapshotDelta {
+
+    private static final int[] NONE = new int[0];
+
+    private final int[] changed;
+    private final int changedCount;
+    private final boolean full;
+    private final boolean phaseChanged;
+    private final boolean aggregatesChanged;
+    private final boolean matrixChanged;
+
+    SnapshotDelta(int[] changed, boolean phaseChanged, boolean aggregatesChanged, boolean matrixChanged) {
+        this.changed = changed;
+        this.changedCount = changed.length;
+        this.full = false;
+        this.phaseChanged = phaseChanged;
+        this.aggregatesChanged = aggregatesChanged;
+        this.matrixChanged = matrixChanged;
+    }
+
+    private SnapshotDelta(int regionCount) {
+        this.changed = NONE;
+        this.changedCount = regionCount;
+        this.full = true;
+        this.phaseChanged = true;
+        this.aggregatesChanged = true;
+        this.matrixChanged = true;
+    }
+
+    /**
+     * @return delta that marks everything as changed
+     */
+    static SnapshotDelta full(int regionCount) {
+        return new SnapshotDelta(regionCount);
+    }
+
+    /**
+     * Delta between two arbitrary snapshots, e.g. the last painted one and the latest.
+     */
+    public static SnapshotDelta between(Snapshot from, Snapshot to) {
+        if (from == null || from.regionCount() != to.regionCount()) {
+            return full(to.regionCount());
+        }
+        int[] changed = diff(from.data(), to.data());
+        return new SnapshotDelta(changed,
+                from.phase() != to.phase(),
+                !from.sameAggregates(to),
+                from.matrix() != to.matrix());
+    }
+
+    /**
+     * Collects the indices where the arrays differ. Allocates nothing when they are equal.
+     *
+     * @return changed indices, in ascending order
+     */
+    static int[] diff(long[] prev, long[] cur) {
+        if (prev == cur) {
+            return NONE;
+        }
+        int[] changed = NONE;
+        int count = 0;
+        for (int i = 0; i < cur.length; i++) {
+            if (prev[i] != cur[i]) {
+                if (count == changed.length) {
+                    changed = Arrays.copyOf(changed, Math.max(16, count * 2));
+                }
+                changed[count++] = i;
+            }
+        }
+        return (count == changed.length) ? changed : Arrays.copyOf(changed, count);
+    }
+
+    /**
+     * @return true if nothing visible changed
+     */
+    public boolean isEmpty() {
+        return changedCount == 0 && !phaseChanged && !matrixChanged;
+    }
+
+    /**
+     * @return true if every region should be considered changed
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    public int changedCount() {
+        return changedCount;
+    }
+
+    /**
+     * @return region index of the i-th change, in ascending order
+     */
+    public int changed(int i) {
+        return full ? i : changed[i];
+    }
+
+    public boolean phaseChanged() {
+        return phaseChanged;
+    }
+
+    public boolean aggregatesChanged() {
+        return aggregatesChanged;
+    }
+
+    public boolean matrixChanged() {
+        return matrixChanged;
+    }
+
+}
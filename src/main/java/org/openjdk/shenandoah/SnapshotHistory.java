@@ -0,0 +1,259 @@
+package org.openjdk.shenandoah;
+
+/**
+ * Fixed-capacity ring of snapshot summaries, stored column-wise in primitive
+ * arrays. Entries are addressed by their sequence number, so both appending
+ * and random access are O(1).
+ *
+ * With a zero period, every added view becomes its own entry. Otherwise the
+ * views are rolled up into buckets of {@code period} milliseconds that keep
+ * the min, max and average of each metric, plus how many views were seen in
+ * each phase. A bucket is published once a view past its end arrives.
+ *
+ * There is a single writer, the sampler thread, and any number of readers.
+ * The writer fills the slot past the end first and then publishes the new end
+ * through a volatile write, so readers never block it. A reader that is
+ * overtaken by more than the capacity may observe newer values than it asked
+ * for, which is harmless for painting.
+ */
+public class SnapshotHistory {
+
+    /**
+     * Number of entries covered by the moving allocation sum.
+     */
+    public static final int SMOOTH = 10;
+
+    public static final int USED = 0;
+    public static final int LIVE = 1;
+    public static final int CSET = 2;
+    public static final int HUMONGOUS = 3;
+    public static final int TRASH = 4;
+    private static final int METRICS = 5;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long period;
+    private final long nominalPeriod;
+    private final int mask;
+    private final long[] time;
+    private final long[] total;
+    private final long[] committed;
+    private final long[][] min;
+    private final long[][] max;
+    private final long[][] sum;
+    private final int[] count;
+    private final int[][] phaseCount;
+    private final long[] allocSum;
+
+    private volatile long end;
+    private boolean open;
+
+    /**
+     * @param capacity number of entries to keep
+     * @param period bucket width in milliseconds, or 0 to keep every view
+     * @param nominalPeriod expected spacing of entries in milliseconds
+     */
+    public SnapshotHistory(int capacity, long period, long nominalPeriod) {
+        int cap = Integer.highestOneBit(Math.max(SMOOTH, capacity - 1)) << 1;
+        this.period = period;
+        this.nominalPeriod = nominalPeriod;
+        this.mask = cap - 1;
+        this.time = new long[cap];
+        this.total = new long[cap];
+        this.committed = new long[cap];
+        this.min = new long[METRICS][cap];
+        this.max = new long[METRICS][cap];
+        this.sum = new long[METRICS][cap];
+        this.count = new int[cap];
+        this.phaseCount = new int[PHASES.length][cap];
+        this.allocSum = new long[cap];
+    }
+
+    public SnapshotHistory(int capacity) {
+        this(capacity, 0, 1);
+    }
+
+    /**
+     * Appends a view, or folds it into the current bucket.
+     * Must only be called from the single writer thread.
+     */
+    public void add(SnapshotView v) {
+        long e = end;
+        int idx = (int) (e & mask);
+        if (open && v.time() >= time[idx] + period) {
+            close(e);
+            e++;
+            idx = (int) (e & mask);
+        }
+
+        if (!open) {
+            time[idx] = (period == 0) ? v.time() : v.time() - v.time() % period;
+            count[idx] = 0;
+            for (int p = 0; p < PHASES.length; p++) {
+                phaseCount[p][idx] = 0;
+            }
+            for (int m = 0; m < METRICS; m++) {
+                min[m][idx] = Long.MAX_VALUE;
+                max[m][idx] = Long.MIN_VALUE;
+                sum[m][idx] = 0;
+            }
+            open = true;
+        }
+
+        total[idx] = v.total();
+        committed[idx] = v.committed();
+        count[idx]++;
+        phaseCount[v.phase().ordinal()][idx]++;
+        accumulate(USED, idx, v.used());
+        accumulate(LIVE, idx, v.live());
+        accumulate(CSET, idx, v.collectionSet());
+        accumulate(HUMONGOUS, idx, v.humongous());
+        accumulate(TRASH, idx, v.trash());
+
+        if (period == 0) {
+            close(e);
+        }
+    }
+
+    private void accumulate(int metric, int idx, long value) {
+        min[metric][idx] = Math.min(min[metric][idx], value);
+        max[metric][idx] = Math.max(max[metric][idx], value);
+        sum[metric][idx] += value;
+    }
+
+    private void close(long e) {
+        int idx = (int) (e & mask);
+
+        // Sum of used deltas over the last SMOOTH entries, maintained incrementally
+        if (e == 0) {
+            allocSum[idx] = 0;
+        } else {
+            long s = allocSum[(int) ((e - 1) & mask)] + (used(e) - used(e - 1));
+            if (e >= SMOOTH) {
+                s -= used(e - SMOOTH + 1) - used(e - SMOOTH);
+            }
+            allocSum[idx] = s;
+        }
+
+        open = false;
+        end = e + 1;
+    }
+
+    /**
+     * @return sequence number one past the latest published entry
+     */
+    public long end() {
+        return end;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return bucket width in milliseconds, or 0 if every view is kept
+     */
+    public long period() {
+        return period;
+    }
+
+    /**
+     * @return expected spacing of entries in milliseconds
+     */
+    public long nominalPeriod() {
+        return Math.max(period, nominalPeriod);
+    }
+
+    /**
+     * @return number of entries available before the given end
+     */
+    public int size(long end) {
+        // The slot past the end may be in the middle of an update
+        return (int) Math.min(end, capacity() - 1);
+    }
+
+    /**
+     * @return time of the entry, or the start of the bucket
+     */
+    public long time(long seq) {
+        return time[(int) (seq & mask)];
+    }
+
+    /**
+     * @return dominant phase of the entry
+     */
+    public Phase phase(long seq) {
+        int idx = (int) (seq & mask);
+        int best = 0;
+        for (int p = 1; p < PHASES.length; p++) {
+            if (phaseCount[p][idx] > phaseCount[best][idx]) {
+                best = p;
+            }
+        }
+        return PHASES[best];
+    }
+
+    /**
+     * @return fraction of the views in the entry that were in the given phase
+     */
+    public float phaseOccupancy(long seq, Phase phase) {
+        int idx = (int) (seq & mask);
+        return 1F * phaseCount[phase.ordinal()][idx] / count[idx];
+    }
+
+    public long min(int metric, long seq) {
+        return min[metric][(int) (seq & mask)];
+    }
+
+    public long max(int metric, long seq) {
+        return max[metric][(int) (seq & mask)];
+    }
+
+    public long avg(int metric, long seq) {
+        int idx = (int) (seq & mask);
+        return sum[metric][idx] / count[idx];
+    }
+
+    public long total(long seq) {
+        return total[(int) (seq & mask)];
+    }
+
+    public long committed(long seq) {
+        return committed[(int) (seq & mask)];
+    }
+
+    public long used(long seq) {
+        return avg(USED, seq);
+    }
+
+    public long live(long seq) {
+        return avg(LIVE, seq);
+    }
+
+    public long humongous(long seq) {
+        return avg(HUMONGOUS, seq);
+    }
+
+    public long collectionSet(long seq) {
+        return avg(CSET, seq);
+    }
+
+    public long trash(long seq) {
+        return avg(TRASH, seq);
+    }
+
+    /**
+     * @return change in average used bytes over the entries covered by {@link #allocSpan(long)}
+     */
+    public long allocSum(long seq) {
+        return allocSum[(int) (seq & mask)];
+    }
+
+    /**
+     * @return number of entries the moving allocation sum is averaged over
+     */
+    public int allocSpan(long seq) {
+        return (int) Math.min(SMOOTH, seq + 1);
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Flow;
+
+/**
+ * Source of region snapshots.
+ *
+ * Every source supports pulling the latest snapshot on demand. Sources that
+ * produce snapshots on their own schedule, e.g. remote streams, additionally
+ * expose a {@link #publisher()}, and consumers should subscribe to it instead
+ * of polling.
+ */
+public interface SnapshotSource extends Closeable {
+
+    String FILE_SCHEME = "file://";
+    String TCP_SCHEME = "tcp://";
+    String SIM_SCHEME = "sim://";
+
+    /**
+     * @return latest snapshot; consecutive snapshots carry their delta
+     */
+    Snapshot snapshot();
+
+    /**
+     * @return publisher of snapshots as they arrive, or null for pull-only sources
+     */
+    default Flow.Publisher<Snapshot> publisher() {
+        return null;
+    }
+
+    /**
+     * @return number of times the source jumped in time so far, e.g. seeks in
+     *         a replay; consumers drop history built before a change
+     */
+    default long jumps() {
+        return 0;
+    }
+
+    /**
+     * @return extra status line to show next to the stats, or null
+     */
+    default String status() {
+        return null;
+    }
+
+    @Override
+    default void close() throws IOException {
+        // nothing to release by default
+    }
+
+    /**
+     * Opens the source named by the identifier:
+     * {@code file://<path>} replays a recording, {@code tcp://[host]:port}
+     * waits for a remote collector to connect, {@code sim://[options]}
+     * simulates a heap, and anything else is treated as a jvmstat VM
+     * identifier such as {@code local://<pid>}.
+     */
+    static SnapshotSource open(String id) throws Exception {
+        if (id.startsWith(FILE_SCHEME)) {
+            return new ReplayProvider(Paths.get(id.substring(FILE_SCHEME.length())));
+        }
+        if (id.startsWith(TCP_SCHEME)) {
+            return StreamServer.first(StreamServer.address(id.substring(TCP_SCHEME.length())));
+        }
+        if (id.startsWith(SIM_SCHEME)) {
+            return new HeapSimulator(id.substring(SIM_SCHEME.length()));
+        }
+        return new DataProvider(id);
+    }
+
+}
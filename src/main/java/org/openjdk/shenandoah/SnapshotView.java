@@ -13,15 +13,23 @@ public class SnapshotView {
     private final long trash;
 
     public SnapshotView(Snapshot s) {
-        time = s.time();
-        phase = s.phase();
-        total = total();
+        this(s, s.time(), s.phase(), s.used(), s.live(), s.humongous(), s.collectionSet(), s.trash());
+    }
+
+    /**
+     * View of {@code s} that stands for several folded samples, reporting the
+     * given time, phase and figures instead of those of {@code s}.
+     */
+    public SnapshotView(Snapshot s, long time, Phase phase, long used, long live, long humongous, long collectionSet, long trash) {
+        this.time = time;
+        this.phase = phase;
+        total = s.total();
         committed = s.committed();
-        used = s.used();
-        live = s.live();
-        humongous = s.humongous();
-        collectionSet = s.collectionSet();
-        trash = s.trash();
+        this.used = used;
+        this.live = live;
+        this.humongous = humongous;
+        this.collectionSet = collectionSet;
+        this.trash = trash;
     }
 
     public Phase phase() {
@@ -0,0 +1,115 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Sends snapshots of one JVM to a remote viewer, see {@link StreamServer}.
+ * Frames are delta-encoded the same way as recordings, so an idle heap costs
+ * a few bytes per sample.
+ *
+ * The connection is opened on the first {@link #send(Snapshot)}. When it
+ * breaks, the failing send throws and the next one reconnects, starting over
+ * with a key frame. Connecting gives up after {@link #CONNECT_TIMEOUT_MS},
+ * and after a failed attempt sends are skipped for a backoff that doubles
+ * with every further failure, up to {@link #MAX_BACKOFF_MS}.
+ */
+public class StreamCollector implements Closeable {
+
+    static final int CONNECT_TIMEOUT_MS = 2000;
+    static final long MIN_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 30_000;
+
+    private final InetSocketAddress viewer;
+    private final String name;
+
+    private SocketChannel channel;
+    private FrameEncoder encoder;
+    private ByteBuffer buf;
+    private int regionCount = -1;
+
+    // Reconnect backoff, 0 after a successful connect
+    private long backoff;
+    private long retryAt;
+
+    public StreamCollector(InetSocketAddress viewer, String name) {
+        this.viewer = viewer;
+        this.name = name;
+    }
+
+    /**
+     * Sends the snapshot, connecting first if needed.
+     *
+     * @return false if the snapshot was skipped while backing off from a failed connect
+     */
+    public boolean send(Snapshot s) throws IOException {
+        if (s.regionCount() != regionCount) {
+            // Heap layout changed, the stream has to start over
+            close();
+            regionCount = s.regionCount();
+            encoder = new FrameEncoder(regionCount);
+            buf = ByteBuffer.allocateDirect(RecordingFormat.HEADER_SIZE + 2 + RecordingFormat.MAX_NAME_SIZE +
+                    RecordingFormat.maxFrameSize(regionCount)).order(RecordingFormat.ORDER);
+        }
+
+        buf.clear();
+        if (channel == null) {
+            long now = System.currentTimeMillis();
+            if (now < retryAt) {
+                return false;
+            }
+            try {
+                channel = connect();
+            } catch (IOException e) {
+                backoff = (backoff == 0) ? MIN_BACKOFF_MS : Math.min(2 * backoff, MAX_BACKOFF_MS);
+                retryAt = now + backoff;
+                throw e;
+            }
+            backoff = 0;
+            encoder.reset();
+            RecordingFormat.writeHeader(buf, regionCount, s.regionSize());
+            RecordingFormat.writeName(buf, name);
+        }
+        encoder.encode(s, buf);
+        buf.flip();
+
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        return true;
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel c = SocketChannel.open();
+        try {
+            c.socket().connect(viewer, CONNECT_TIMEOUT_MS);
+            c.socket().setTcpNoDelay(true);
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+        return c;
+    }
+
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            SocketChannel c = channel;
+            channel = null;
+            c.close();
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package org.openjdk.shenandoah;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Viewer side of the collector protocol. A single thread multiplexes the
+ * connections of any number of {@link StreamCollector}s with a selector,
+ * decodes their frames, and hands each stream out as a {@link RemoteSource}
+ * once its first snapshot has arrived.
+ */
+public class StreamServer implements Closeable {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Consumer<RemoteSource> listener;
+    private final Thread thread;
+
+    public StreamServer(InetSocketAddress address, Consumer<RemoteSource> listener) throws IOException {
+        this.listener = listener;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        this.thread = new Thread(this::loop, "Stream server " + port());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Listens on the address and waits for the first collector to connect.
+     * Later collectors are turned away; closing the returned source stops
+     * the server.
+     */
+    public static RemoteSource first(InetSocketAddress address) throws IOException, InterruptedException {
+        CompletableFuture<RemoteSource> first = new CompletableFuture<>();
+        StreamServer server = new StreamServer(address, s -> {
+            if (!first.complete(s)) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+            }
+        });
+        System.err.println("Waiting for a collector on port " + server.port());
+        try {
+            RemoteSource source = first.get();
+            source.ownedBy(server);
+            return source;
+        } catch (InterruptedException e) {
+            server.close();
+            throw e;
+        } catch (ExecutionException e) {
+            server.close();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Parses {@code [host]:port}; without a host, the wildcard address is used.
+     */
+    public static InetSocketAddress address(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected [host]:port, got " + hostPort);
+        }
+        String host = hostPort.substring(0, colon);
+        int port = Integer.parseInt(hostPort.substring(colon + 1));
+        return host.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    private void loop() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                if (!selector.isOpen()) {
+                    break;
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        Connection c = (Connection) key.attachment();
+                        try {
+                            c.read();
+                        } catch (IOException | RuntimeException e) {
+                            if (c.source == null) {
+                                System.err.println("Dropped collector: " + e.getMessage());
+                            }
+                            c.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // server closed
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) {
+            return;
+        }
+        ch.configureBlocking(false);
+        Connection c = new Connection(ch);
+        c.key = ch.register(selector, SelectionKey.OP_READ, c);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        server.close();
+        selector.close();
+    }
+
+    private class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer buf;
+        String name;
+        int maxFrameSize;
+        FrameDecoder decoder;
+        RemoteSource source;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.buf = ByteBuffer.allocate(INITIAL_BUFFER_SIZE).order(RecordingFormat.ORDER);
+        }
+
+        void read() throws IOException {
+            if (channel.read(buf) < 0) {
+                close();
+                return;
+            }
+            buf.flip();
+            if (decoder == null && !readHeader()) {
+                buf.compact();
+                return;
+            }
+            while (buf.remaining() >= RecordingFormat.FRAME_HEADER_SIZE) {
+                if (FrameDecoder.length(buf) > maxFrameSize - RecordingFormat.FRAME_HEADER_SIZE) {
+                    throw new IOException("Frame too large from " + name);
+                }
+                if (!FrameDecoder.hasFrame(buf)) {
+                    break;
+                }
+                Snapshot s = decoder.decode(buf);
+                if (s == null) {
+                    continue;
+                }
+                if (source == null) {
+                    source = new RemoteSource(name, s, this::close);
+                    listener.accept(source);
+                } else {
+                    source.publish(s);
+                }
+            }
+            buf.compact();
+        }
+
+        private boolean readHeader() throws IOException {
+            if (buf.remaining() < RecordingFormat.HEADER_SIZE) {
+                return false;
+            }
+            int start = buf.position();
+            long[] h = RecordingFormat.readHeader(buf);
+            String n = RecordingFormat.readName(buf);
+            if (n == null) {
+                buf.position(start);
+                return false;
+            }
+            name = n;
+            int regionCount = (int) h[0];
+            maxFrameSize = RecordingFormat.maxFrameSize(regionCount);
+            decoder = new FrameDecoder(regionCount, h[1]);
+            if (buf.capacity() < maxFrameSize) {
+                ByteBuffer bigger = ByteBuffer.allocate(maxFrameSize).order(RecordingFormat.ORDER);
+                bigger.put(buf);
+                bigger.flip();
+                buf = bigger;
+            }
+            return true;
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            if (source != null) {
+                source.disconnected();
+            }
+        }
+    }
+
+}
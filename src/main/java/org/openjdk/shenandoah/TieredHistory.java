@@ -0,0 +1,63 @@
+package org.openjdk.shenandoah;
+
+/**
+ * Snapshot history at several resolutions, similar to a round-robin database.
+ * The raw tier keeps the latest views as they come; coarser tiers roll them up
+ * into 1 s, 10 s and 1 min buckets. Each tier has a fixed capacity, so memory
+ * stays bounded no matter how long the session runs.
+ */
+public class TieredHistory {
+
+    public static final int CAPACITY = 4096;
+
+    private static final long[] PERIODS = { 1_000, 10_000, 60_000 };
+
+    private final SnapshotHistory[] tiers;
+
+    /**
+     * @param rawPeriod expected spacing of raw views in milliseconds
+     */
+    public TieredHistory(long rawPeriod) {
+        tiers = new SnapshotHistory[PERIODS.length + 1];
+        tiers[0] = new SnapshotHistory(CAPACITY, 0, rawPeriod);
+        for (int t = 0; t < PERIODS.length; t++) {
+            tiers[t + 1] = new SnapshotHistory(CAPACITY, PERIODS[t], PERIODS[t]);
+        }
+    }
+
+    /**
+     * Adds a view to every tier. Must only be called from the single writer thread.
+     */
+    public void add(SnapshotView v) {
+        for (SnapshotHistory t : tiers) {
+            t.add(v);
+        }
+    }
+
+    public SnapshotHistory raw() {
+        return tiers[0];
+    }
+
+    /**
+     * @return longest time window, in milliseconds, that any tier can cover
+     */
+    public long maxWindow() {
+        SnapshotHistory coarsest = tiers[tiers.length - 1];
+        return coarsest.capacity() * coarsest.nominalPeriod();
+    }
+
+    /**
+     * Picks the finest tier that covers the window without putting more
+     * than a couple of entries on each of the {@code width} pixels.
+     */
+    public SnapshotHistory select(long window, int width) {
+        for (SnapshotHistory t : tiers) {
+            long entries = window / t.nominalPeriod();
+            if (entries < t.capacity() && entries <= 2L * width) {
+                return t;
+            }
+        }
+        return tiers[tiers.length - 1];
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConnectionMatrixTest {
+
+    static String encode(BitSet row, int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i += 6) {
+            int c = 0;
+            for (int bit = 0; bit < 6; bit++) {
+                if (row.get(i + bit)) {
+                    c |= 1 << bit;
+                }
+            }
+            sb.append((char) (c + 32));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void decode() {
+        int size = 200;
+        Random r = new Random(1);
+        BitSet[] rows = new BitSet[size];
+        ConnectionMatrix.Decoder decoder = new ConnectionMatrix.Decoder(size);
+        for (int f = 0; f < size; f++) {
+            rows[f] = new BitSet();
+            if (r.nextInt(4) == 0) {
+                for (int k = 0; k < 5; k++) {
+                    rows[f].set(r.nextInt(size));
+                }
+            }
+            String s = rows[f].isEmpty() ? "" : encode(rows[f], size);
+            if (f % 2 == 0) {
+                decoder.row(f, s);
+            } else {
+                byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+                decoder.row(f, b, b.length);
+            }
+        }
+        ConnectionMatrix m = decoder.finish();
+
+        for (int f = 0; f < size; f++) {
+            assertEquals(rows[f].isEmpty() ? null : rows[f], m.row(f));
+            int n = 0;
+            for (int t = m.nextSetBit(f, 0); t >= 0; t = m.nextSetBit(f, t + 1)) {
+                assertTrue(rows[f].get(t));
+                assertTrue(m.get(f, t));
+                n++;
+            }
+            assertEquals(rows[f].cardinality(), n);
+        }
+    }
+
+    @Test
+    public void unchangedRowsShareMatrix() {
+        ConnectionMatrix.Decoder decoder = new ConnectionMatrix.Decoder(100);
+        decoder.row(3, "!");
+        ConnectionMatrix first = decoder.finish();
+
+        decoder.row(3, "!");
+        assertSame(first, decoder.finish());
+
+        decoder.row(3, "\"");
+        decoder.row(7, "");
+        ConnectionMatrix second = decoder.finish();
+        assertNotSame(first, second);
+        assertTrue(first.get(3, 0));
+        assertFalse(second.get(3, 0));
+        assertTrue(second.get(3, 1));
+
+        Snapshot a = new Snapshot(0, 1024, new long[100], first, 0);
+        Snapshot b = new Snapshot(a, 100, new long[100], second, 0);
+        assertTrue(b.delta().matrixChanged());
+    }
+
+    @Test
+    public void changedMatrixSharesUnchangedRows() {
+        int size = 300;
+        ConnectionMatrix.Decoder decoder = new ConnectionMatrix.Decoder(size);
+        BitSet row = new BitSet();
+        row.set(5);
+        row.set(250);
+        for (int f = 0; f < size; f++) {
+            decoder.row(f, (f % 3 == 0) ? encode(row, size) : "");
+        }
+        ConnectionMatrix first = decoder.finish();
+
+        row.set(100);
+        String changed = encode(row, size);
+        decoder.row(6, changed);
+        decoder.row(7, changed);
+        ConnectionMatrix second = decoder.finish();
+
+        for (int f = 0; f < size; f++) {
+            assertEquals(f != 6 && f != 7, second.sharesRow(first, f));
+        }
+
+        // The previous matrix is left as it was
+        assertFalse(first.get(6, 100));
+        assertTrue(first.get(6, 5));
+        assertFalse(first.get(7, 5));
+        assertTrue(second.get(6, 100));
+        assertTrue(second.get(7, 250));
+        assertEquals(2 * size / 3 + 4, second.count());
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DashboardTest {
+
+    private static final long REGION_SIZE = 1000;
+
+    private static Snapshot sample(long time, float used) {
+        long[] data = new long[10];
+        Arrays.fill(data, RegionStat.pack(used, 0F, 0F, 0F, 0F, RegionState.REGULAR));
+        return new Snapshot(time, REGION_SIZE, data, null, 0);
+    }
+
+    /**
+     * Pull source that counts its samples and the threads taking them.
+     */
+    private static class Counting implements SnapshotSource {
+        final AtomicInteger samples = new AtomicInteger();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        volatile Snapshot next = sample(0, 0.5F);
+        volatile boolean fail;
+        volatile boolean closed;
+
+        @Override
+        public Snapshot snapshot() {
+            if (fail) {
+                throw new IllegalStateException("JVM is gone");
+            }
+            samples.incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            return next;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void batchesShareFewThreads() {
+        Dashboard dashboard = new Dashboard(10);
+        try {
+            Map<String, Counting> sources = new ConcurrentHashMap<>();
+            for (int i = 0; i < 50; i++) {
+                Counting c = new Counting();
+                sources.put("jvm" + i, c);
+                dashboard.add("jvm" + i, c);
+            }
+            for (int tick = 0; tick < 3; tick++) {
+                dashboard.sample();
+            }
+
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            for (Counting c : sources.values()) {
+                assertEquals(3, c.samples.get());
+                threads.addAll(c.threads);
+            }
+            assertTrue(threads.size() <= Dashboard.MAX_SAMPLERS);
+        } finally {
+            dashboard.shutdown();
+        }
+    }
+
+    @Test
+    public void pushSourcesAreNotPolled() {
+        Dashboard dashboard = new Dashboard(10);
+        try (SubmissionPublisher<Snapshot> publisher = new SubmissionPublisher<>()) {
+            AtomicInteger pulls = new AtomicInteger();
+            dashboard.add("remote", new SnapshotSource() {
+                @Override
+                public Snapshot snapshot() {
+                    pulls.incrementAndGet();
+                    return sample(0, 0.5F);
+                }
+
+                @Override
+                public Flow.Publisher<Snapshot> publisher() {
+                    return publisher;
+                }
+            });
+            // Only the initial snapshot is pulled when the tile is added
+            assertEquals(1, pulls.get());
+            dashboard.sample();
+            assertEquals(1, pulls.get());
+        } finally {
+            dashboard.shutdown();
+        }
+    }
+
+    @Test
+    public void addAndRemoveTiles() {
+        Dashboard dashboard = new Dashboard(10);
+        try {
+            Counting a = new Counting();
+            Counting b = new Counting();
+            dashboard.add("a", a);
+            dashboard.add("b", b);
+            assertEquals(2, dashboard.size());
+
+            dashboard.remove("a");
+            assertEquals(1, dashboard.size());
+            assertTrue(a.closed);
+            assertFalse(b.closed);
+            assertNull(dashboard.sparkline("a"));
+
+            // Removed tiles are no longer sampled
+            dashboard.sample();
+            assertEquals(0, a.samples.get());
+            assertEquals(1, b.samples.get());
+
+            // Failing sources are detached
+            b.fail = true;
+            dashboard.sample();
+            assertEquals(0, dashboard.size());
+            assertTrue(b.closed);
+        } finally {
+            dashboard.shutdown();
+        }
+    }
+
+    @Test
+    public void sparklineKeepsPeakPerPeriod() {
+        Dashboard dashboard = new Dashboard(10);
+        try {
+            Counting c = new Counting();
+            dashboard.add("jvm", c);
+
+            // Three periods, with a short spike in the second
+            float[] used = { 0.2F, 0.3F, 0.1F, 0.9F, 0.2F, 0.4F };
+            for (int i = 0; i < used.length; i++) {
+                c.next = sample(i / 2 * Dashboard.SPARK_PERIOD_MS + (i % 2) * 10, used[i]);
+                dashboard.sample();
+            }
+            assertArrayEquals(new float[] { 0.3F, 0.9F, 0.4F }, dashboard.sparkline("jvm"), 0.001F);
+
+            // The ring keeps the latest points
+            for (int i = 3; i < Dashboard.SPARK_POINTS + 10; i++) {
+                c.next = sample(i * Dashboard.SPARK_PERIOD_MS, (i % 10) / 10F);
+                dashboard.sample();
+            }
+            float[] spark = dashboard.sparkline("jvm");
+            assertEquals(Dashboard.SPARK_POINTS, spark.length);
+            assertEquals(0.9F, spark[spark.length - 1], 0.001F);
+            assertEquals(0.0F, spark[spark.length - 10], 0.001F);
+        } finally {
+            dashboard.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DiscoveryTest {
+
+    private static final long TIMEOUT_S = 10;
+
+    /**
+     * Writes a minimal hsperfdata file with one long counter.
+     */
+    private static void writePerfData(Path file, String counter, boolean accessible) throws IOException {
+        byte[] name = (counter + "\0").getBytes(StandardCharsets.US_ASCII);
+        int entryLength = (20 + name.length + 7) / 8 * 8 + 8;
+        ByteBuffer buf = ByteBuffer.allocate(32 + entryLength).order(ByteOrder.BIG_ENDIAN);
+        buf.putInt(0xcafec0c0);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 1);               // byte order
+        buf.put((byte) 2);               // major
+        buf.put((byte) 0);               // minor
+        buf.put((byte) (accessible ? 1 : 0));
+        buf.putInt(32 + entryLength);    // used
+        buf.putInt(0);                   // overflow
+        buf.putLong(0);                  // mod time stamp
+        buf.putInt(32);                  // entry offset
+        buf.putInt(1);                   // number of entries
+
+        buf.putInt(entryLength);
+        buf.putInt(20);                  // name offset
+        buf.putInt(0);                   // vector length
+        buf.put((byte) 'J');
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        buf.put((byte) 0);
+        buf.putInt(entryLength - 8);     // data offset
+        buf.put(name);
+        buf.putLong(32 + entryLength - 8, 42);
+        Files.write(file, buf.array());
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void probe() throws IOException {
+        Path file = Files.createTempFile("hsperf", "");
+        try {
+            writePerfData(file, DataProvider.PREFIX + "max_regions", true);
+            assertEquals(Boolean.TRUE, PerfData.publishes(file, DataProvider.PREFIX));
+            assertEquals(Boolean.FALSE, PerfData.publishes(file, "sun.gc.other."));
+
+            writePerfData(file, DataProvider.PREFIX + "max_regions", false);
+            assertNull(PerfData.publishes(file, DataProvider.PREFIX));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void attachAndDetach() throws Exception {
+        Path root = Files.createTempDirectory("discovery");
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        int pid = (int) ProcessHandle.current().pid();
+        Discovery discovery = new Discovery(root, new Discovery.Listener() {
+            @Override
+            public void attach(int p) {
+                events.add("attach " + p);
+            }
+
+            @Override
+            public void detach(int p) {
+                events.add("detach " + p);
+            }
+        });
+        try {
+            // Directory created after discovery started
+            Path dir = Files.createDirectory(root.resolve("hsperfdata_test"));
+            Thread.sleep(200);
+
+            // JVM without Shenandoah counters is ignored
+            writePerfData(dir.resolve("1"), "sun.gc.other.count", true);
+
+            // Counters published after the file appeared
+            Path file = dir.resolve(String.valueOf(pid));
+            writePerfData(file, DataProvider.PREFIX + "max_regions", false);
+            Thread.sleep(200);
+            assertTrue(events.isEmpty());
+            writePerfData(file, DataProvider.PREFIX + "max_regions", true);
+            assertEquals("attach " + pid, events.poll(TIMEOUT_S, TimeUnit.SECONDS));
+
+            Files.delete(file);
+            assertEquals("detach " + pid, events.poll(TIMEOUT_S, TimeUnit.SECONDS));
+            assertTrue(events.isEmpty());
+        } finally {
+            discovery.close();
+            delete(root);
+        }
+    }
+
+    @Test
+    public void detachAfterLostEvents() throws Exception {
+        Path root = Files.createTempDirectory("discovery");
+        Path dir = Files.createDirectory(root.resolve("hsperfdata_test"));
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        CountDownLatch attaching = new CountDownLatch(1);
+        CountDownLatch flooded = new CountDownLatch(1);
+        int pid = (int) ProcessHandle.current().pid();
+        Discovery discovery = new Discovery(root, new Discovery.Listener() {
+            @Override
+            public void attach(int p) {
+                events.add("attach " + p);
+                attaching.countDown();
+                try {
+                    flooded.await(TIMEOUT_S, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void detach(int p) {
+                events.add("detach " + p);
+            }
+        });
+        try {
+            Thread.sleep(200);
+            Path file = dir.resolve(String.valueOf(pid));
+            writePerfData(file, DataProvider.PREFIX + "max_regions", true);
+            assertTrue(attaching.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+            // While the listener blocks, more events arrive than a watch key keeps
+            Files.delete(file);
+            for (int i = 0; i < 1000; i++) {
+                Files.createFile(dir.resolve("other" + i));
+            }
+            flooded.countDown();
+
+            assertEquals("attach " + pid, events.poll(TIMEOUT_S, TimeUnit.SECONDS));
+            assertEquals("detach " + pid, events.poll(TIMEOUT_S, TimeUnit.SECONDS));
+        } finally {
+            discovery.close();
+            delete(root);
+        }
+    }
+
+}
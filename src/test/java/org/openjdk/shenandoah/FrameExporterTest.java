@@ -0,0 +1,70 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameExporterTest {
+
+    @Test
+    public void dropsWhenBuffersRunOut() throws IOException {
+        Path dir = Files.createTempDirectory("frames");
+        FrameExporter exporter = new FrameExporter(dir, 64, 32, 10, 1);
+
+        // One encoder gets two buffers; a third frame has nowhere to go
+        BufferedImage a = exporter.acquire();
+        BufferedImage b = exporter.acquire();
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(exporter.acquire());
+        assertEquals(1, exporter.dropped());
+
+        a.setRGB(0, 0, Color.RED.getRGB());
+        exporter.submit(a);
+        exporter.submit(b);
+        exporter.close();
+
+        assertEquals(2, exporter.written());
+        BufferedImage first = ImageIO.read(dir.resolve("frame-000000.png").toFile());
+        assertEquals(64, first.getWidth());
+        assertEquals(Color.RED.getRGB(), first.getRGB(0, 0));
+        assertTrue(Files.exists(dir.resolve("frame-000001.png")));
+
+        // The dropped tick extends the frame before it
+        assertEquals(Arrays.asList(
+                "ffconcat version 1.0",
+                "file 'frame-000000.png'",
+                "duration 0.100000",
+                "file 'frame-000001.png'",
+                "duration 0.200000",
+                "file 'frame-000001.png'"),
+                Files.readAllLines(dir.resolve(FrameExporter.FRAME_LIST)));
+    }
+
+    @Test
+    public void renderFrame() {
+        SnapshotSource source = new HeapSimulator("regions=256");
+        ShenandoahVisualizer.Render render = new ShenandoahVisualizer.Render(source, null, 100);
+        render.layout(400, 300);
+        for (int i = 0; i < 20; i++) {
+            render.run();
+        }
+        BufferedImage img = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        render.renderFrame(g, 400, 300);
+        g.dispose();
+
+        // Graph background in the top left corner, white padding around it
+        assertEquals(Color.WHITE.getRGB(), img.getRGB(0, 0));
+        assertEquals(Color.BLACK.getRGB(), img.getRGB(12, 12));
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class HeapSimulatorTest {
+
+    @Test
+    public void deterministic() {
+        HeapSimulator a = new HeapSimulator("regions=512,seed=42,connections=4");
+        HeapSimulator b = new HeapSimulator("seed=42,connections=4,regions=512");
+        for (int i = 0; i < 200; i++) {
+            Snapshot sa = a.snapshot();
+            Snapshot sb = b.snapshot();
+            assertEquals(sa.phase(), sb.phase());
+            assertEquals(sa.delta().changedCount(), sb.delta().changedCount());
+            assertEquals(sa.matrix(), sb.matrix());
+            assertArrayEquals(sa.data(), sb.data());
+        }
+    }
+
+    @Test
+    public void cycles() {
+        HeapSimulator sim = new HeapSimulator("regions=1024,pinned=5,humongous=20");
+        Set<Phase> phases = EnumSet.noneOf(Phase.class);
+        Set<RegionState> states = EnumSet.noneOf(RegionState.class);
+        for (int i = 0; i < 1000; i++) {
+            Snapshot s = sim.snapshot();
+            assertEquals(1024, s.regionCount());
+            assertNull(s.matrix());
+            assertTrue(s.used() <= s.total());
+            assertTrue(s.live() <= s.used());
+            phases.add(s.phase());
+            for (int r = 0; r < s.regionCount(); r++) {
+                RegionStat rs = s.get(r);
+                assertTrue(rs.live() <= rs.used());
+                states.add(rs.state());
+            }
+        }
+        assertEquals(EnumSet.of(Phase.IDLE, Phase.MARKING, Phase.EVACUATING, Phase.UPDATE_REFS), phases);
+        assertEquals(EnumSet.allOf(RegionState.class), states);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOption() {
+        new HeapSimulator("regions=512,colour=red");
+    }
+
+}
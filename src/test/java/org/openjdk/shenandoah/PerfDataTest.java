@@ -0,0 +1,156 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PerfDataTest {
+
+    /**
+     * Writes a hsperfdata file with the given counters: Long values become long
+     * counters, String values become byte vectors of twice their length.
+     */
+    private static Path write(ByteOrder order, boolean accessible, Object... counters) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096).order(ByteOrder.BIG_ENDIAN);
+        buf.putInt(0xcafec0c0);
+        buf.order(order);
+        buf.put((byte) (order == ByteOrder.BIG_ENDIAN ? 0 : 1));
+        buf.put((byte) 2);               // major
+        buf.put((byte) 0);               // minor
+        buf.put((byte) (accessible ? 1 : 0));
+        buf.putInt(0);                   // used, patched below
+        buf.putInt(0);                   // overflow
+        buf.putLong(0);                  // mod time stamp
+        buf.putInt(32);                  // entry offset
+        buf.putInt(counters.length / 2); // number of entries
+
+        int entry = 32;
+        for (int c = 0; c < counters.length; c += 2) {
+            byte[] name = (counters[c] + "\0").getBytes(StandardCharsets.US_ASCII);
+            Object value = counters[c + 1];
+            int dataOffset = (20 + name.length + 7) / 8 * 8;
+            int vectorLength = (value instanceof String) ? 2 * ((String) value).length() + 1 : 0;
+            int length = dataOffset + ((value instanceof String) ? (vectorLength + 7) / 8 * 8 : 8);
+
+            buf.putInt(entry, length);
+            buf.putInt(entry + 4, 20);
+            buf.putInt(entry + 8, vectorLength);
+            buf.put(entry + 12, (byte) ((value instanceof String) ? 'B' : 'J'));
+            buf.putInt(entry + 16, dataOffset);
+            for (int i = 0; i < name.length; i++) {
+                buf.put(entry + 20 + i, name[i]);
+            }
+            if (value instanceof String) {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.US_ASCII);
+                for (int i = 0; i < bytes.length; i++) {
+                    buf.put(entry + dataOffset + i, bytes[i]);
+                }
+            } else {
+                buf.putLong(entry + dataOffset, (Long) value);
+            }
+            entry += length;
+        }
+        buf.putInt(8, entry);
+
+        Path file = Files.createTempFile("hsperf", "");
+        byte[] bytes = new byte[entry];
+        System.arraycopy(buf.array(), 0, bytes, 0, entry);
+        Files.write(file, bytes);
+        return file;
+    }
+
+    private static void readsCounters(ByteOrder order) throws IOException {
+        Path file = write(order, true,
+                "sun.gc.a", 0x0102030405060708L,
+                "sun.gc.s", "hello",
+                "sun.gc.b", -2L,
+                "other.c", 7L);
+        try (PerfData perf = PerfData.map(file)) {
+            assertEquals(0x0102030405060708L, perf.getLong(perf.longOffset("sun.gc.a")));
+            assertEquals(-2L, perf.getLong(perf.longOffset("sun.gc.b")));
+
+            long[] values = new long[2];
+            perf.getLongs(new int[] { perf.longOffset("other.c"), perf.longOffset("sun.gc.a") }, values);
+            assertArrayEquals(new long[] { 7, 0x0102030405060708L }, values);
+
+            int s = perf.stringOffset("sun.gc.s");
+            assertEquals(11, perf.stringCapacity("sun.gc.s"));
+            assertEquals("hello", perf.getString(s, perf.stringCapacity("sun.gc.s")));
+            byte[] bytes = new byte[16];
+            assertEquals(5, perf.getBytes(s, perf.stringCapacity("sun.gc.s"), bytes));
+            assertEquals("hello", new String(bytes, 0, 5, StandardCharsets.US_ASCII));
+
+            Map<String, Integer> longs = new HashMap<>();
+            perf.forEachLong("sun.gc.", longs::put);
+            assertEquals(2, longs.size());
+            assertEquals(perf.longOffset("sun.gc.b"), (int) longs.get("sun.gc.b"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void littleEndian() throws IOException {
+        readsCounters(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void bigEndian() throws IOException {
+        readsCounters(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Test
+    public void missingCounters() throws IOException {
+        Path file = write(ByteOrder.LITTLE_ENDIAN, true, "sun.gc.a", 1L, "sun.gc.s", "x");
+        try (PerfData perf = PerfData.map(file)) {
+            assertEquals(-1, perf.longOffset("sun.gc.missing"));
+            assertEquals(-1, perf.stringOffset("sun.gc.missing"));
+            assertEquals(0, perf.stringCapacity("sun.gc.missing"));
+
+            // Counters are only found under their own type
+            assertEquals(-1, perf.longOffset("sun.gc.s"));
+            assertEquals(-1, perf.stringOffset("sun.gc.a"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void accessibility() throws IOException {
+        Path file = write(ByteOrder.LITTLE_ENDIAN, false, "sun.gc.a", 1L);
+        try {
+            assertNull(PerfData.publishes(file, "sun.gc."));
+            Files.delete(file);
+            file = write(ByteOrder.LITTLE_ENDIAN, true, "sun.gc.a", 1L);
+            assertEquals(Boolean.TRUE, PerfData.publishes(file, "sun.gc."));
+            assertEquals(Boolean.FALSE, PerfData.publishes(file, "sun.rt."));
+
+            // Created, but the JVM has not written the prologue yet
+            Files.write(file, new byte[64]);
+            assertNull(PerfData.publishes(file, "sun.gc."));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notPerfData() throws IOException {
+        Path file = Files.createTempFile("hsperf", "");
+        try {
+            Files.write(file, new byte[64]);
+            PerfData.map(file).close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
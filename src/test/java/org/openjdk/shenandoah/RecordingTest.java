@@ -0,0 +1,204 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RecordingTest {
+
+    static List<Snapshot> generate(int regions, int count, long seed) {
+        Random r = new Random(seed);
+        RegionState[] states = RegionState.values();
+        long[] data = new long[regions];
+        List<Snapshot> list = new ArrayList<>();
+        Snapshot prev = null;
+        for (int t = 0; t < count; t++) {
+            int changes = (t % 50 == 0) ? regions : r.nextInt(10);
+            for (int c = 0; c < changes; c++) {
+                int idx = (changes == regions) ? c : r.nextInt(regions);
+                data[idx] = RegionStat.pack(r.nextInt(101) / 100F, r.nextInt(101) / 100F, 0F, 0F, 0F,
+                        states[r.nextInt(states.length)]);
+            }
+            int status = (t / 100) % 2;
+            prev = (prev == null) ?
+                    new Snapshot(t, 1024, data.clone(), null, status) :
+                    new Snapshot(prev, t, data, null, status);
+            list.add(prev);
+        }
+        return list;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        try {
+            List<Snapshot> expected = generate(1000, 1000, 1);
+            try (RecordingWriter w = new RecordingWriter(file, 1000, 1024, 0)) {
+                for (Snapshot s : expected) {
+                    w.write(s);
+                }
+            }
+            // Mostly unchanged regions should be much smaller than raw words
+            assertTrue(Files.size(file) < 1000L * 1000 * 8 / 10);
+
+            try (RecordingReader r = new RecordingReader(file)) {
+                assertEquals(1000, r.regionCount());
+                assertEquals(1024, r.regionSize());
+                for (Snapshot e : expected) {
+                    Snapshot s = r.next();
+                    assertNotNull(s);
+                    assertEquals(e.time(), s.time());
+                    assertEquals(e.phase(), s.phase());
+                    assertEquals(e, s);
+                    assertEquals(e.used(), s.used());
+                }
+                assertNull(r.next());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void rotation() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        Path rotated = file.resolveSibling(file.getFileName() + ".1");
+        try {
+            List<Snapshot> expected = generate(1000, 500, 2);
+            try (RecordingWriter w = new RecordingWriter(file, 1000, 1024, 64 * 1024)) {
+                for (Snapshot s : expected) {
+                    w.write(s);
+                }
+            }
+            assertTrue(Files.exists(rotated));
+            assertTrue(Files.size(rotated) < 2 * 64 * 1024);
+
+            // The current file starts with a key frame and ends with the latest sample
+            Snapshot last = null;
+            try (RecordingReader r = new RecordingReader(file)) {
+                Snapshot s;
+                while ((s = r.next()) != null) {
+                    last = s;
+                }
+            }
+            assertNotNull(last);
+            assertEquals(expected.get(expected.size() - 1), last);
+
+            // Both the rotated and the closed file carry the seek index
+            try (MappedRecording r = new MappedRecording(rotated)) {
+                assertTrue(r.indexed());
+            }
+            try (MappedRecording r = new MappedRecording(file)) {
+                assertTrue(r.indexed());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(rotated);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void skipsIndexLargerThanBuffer() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        try {
+            // With a single region, nearly every frame is a key frame
+            List<Snapshot> expected = generate(1, 80_000, 9);
+            try (RecordingWriter w = new RecordingWriter(file, 1, 1024, 0)) {
+                for (Snapshot s : expected) {
+                    w.write(s);
+                }
+            }
+            try (MappedRecording m = new MappedRecording(file)) {
+                assertTrue(16L * m.keyFrames() > 1024 * 1024);
+            }
+
+            int count = 0;
+            try (RecordingReader r = new RecordingReader(file)) {
+                while (r.next() != null) {
+                    count++;
+                }
+            }
+            assertEquals(expected.size(), count);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void rejectsCorruptFrameLengths() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        try {
+            try (RecordingWriter w = new RecordingWriter(file, 1000, 1024, 0)) {
+                for (Snapshot s : generate(1000, 10, 10)) {
+                    w.write(s);
+                }
+            }
+            byte[] bytes = Files.readAllBytes(file);
+            for (int length : new int[] { -1, Integer.MAX_VALUE - 1 }) {
+                ByteBuffer.wrap(bytes).order(RecordingFormat.ORDER).putInt(RecordingFormat.HEADER_SIZE + 1, length);
+                Files.write(file, bytes);
+                try (RecordingReader r = new RecordingReader(file)) {
+                    r.next();
+                    fail("Frame length " + length + " should be rejected");
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void indexAcrossChunks() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        try {
+            List<Snapshot> expected = generate(10, 3000, 8);
+            try (RecordingWriter w = new RecordingWriter(file, 10, 1024, 0)) {
+                for (Snapshot s : expected) {
+                    w.write(s);
+                }
+            }
+
+            // A chunk size that puts a chunk boundary inside the index, past the overlap
+            ByteBuffer trailer = ByteBuffer.wrap(Files.readAllBytes(file)).order(RecordingFormat.ORDER);
+            long size = trailer.capacity();
+            long indexOffset = trailer.getLong((int) size - RecordingFormat.TRAILER_SIZE);
+            int overlap = RecordingFormat.maxFrameSize(10);
+            long chunk = 1024;
+            while (indexOffset / chunk * chunk + chunk + overlap >= size) {
+                chunk++;
+            }
+            assertTrue(chunk < indexOffset);
+
+            try (MappedRecording whole = new MappedRecording(file);
+                 MappedRecording r = new MappedRecording(file, chunk)) {
+                assertTrue(r.indexed());
+                assertEquals(whole.keyFrames(), r.keyFrames());
+                for (int k = 0; k < r.keyFrames(); k++) {
+                    assertEquals(whole.keyFrameTime(k), r.keyFrameTime(k));
+                    assertEquals(whole.keyFrameOffset(k), r.keyFrameOffset(k));
+                }
+                assertEquals(expected.get(expected.size() - 1).time(), r.lastTime());
+
+                // Every frame is still read whole across the small chunks
+                int i = 0;
+                for (long offset = RecordingFormat.HEADER_SIZE; r.hasFrame(offset); offset = r.nextFrame(offset)) {
+                    assertEquals(expected.get(i++).time(), r.frameTime(offset));
+                }
+                assertEquals(expected.size(), i);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RegionMapTest {
+
+    private static long[] words(int n) {
+        RegionState[] states = RegionState.values();
+        long[] data = new long[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = RegionStat.pack((i % 10) / 10F, (i % 7) / 10F, 0.1F, 0, 0.2F, states[i % states.length]);
+        }
+        return data;
+    }
+
+    /**
+     * @return matrix with the given number of random connections between distinct regions
+     */
+    private static ConnectionMatrix matrix(int size, int connections, long seed) {
+        Random r = new Random(seed);
+        BitSet[] rows = new BitSet[size];
+        for (int f = 0; f < size; f++) {
+            rows[f] = new BitSet();
+        }
+        for (int n = 0; n < connections; ) {
+            int f = r.nextInt(size);
+            int t = r.nextInt(size);
+            if (f != t && !rows[f].get(t)) {
+                rows[f].set(t);
+                n++;
+            }
+        }
+        ConnectionMatrix.Decoder decoder = new ConnectionMatrix.Decoder(size);
+        for (int f = 0; f < size; f++) {
+            decoder.row(f, ConnectionMatrixTest.encode(rows[f], size));
+        }
+        return decoder.finish();
+    }
+
+    private static BufferedImage paint(RegionMap map, int width, int height, Snapshot s) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        map.render(g, s);
+        g.dispose();
+        return img;
+    }
+
+    private static void assertSame(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("(" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void fitPaintsEveryRegion() {
+        long[] data = words(64);
+        RegionMap map = new RegionMap();
+        map.resize(160, 160);
+        BufferedImage actual = paint(map, 160, 160, new Snapshot(0, 1024, data, null, 0));
+
+        BufferedImage expected = new BufferedImage(160, 160, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        for (int i = 0; i < data.length; i++) {
+            RegionStat.render(g, data[i], (i % 8) * 20, (i / 8) * 20, 18, 18);
+        }
+        g.dispose();
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void edgesMatchTranslucentLines() {
+        long[] data = words(64);
+        ConnectionMatrix m = matrix(64, 40, 2);
+        assertTrue(m.count() <= RegionMap.BUNDLE_THRESHOLD);
+        RegionMap map = new RegionMap();
+        map.resize(160, 160);
+        BufferedImage actual = paint(map, 160, 160, new Snapshot(0, 1024, data, m, 0));
+
+        // What drawing every connection as a translucent line gives
+        BufferedImage expected = new BufferedImage(160, 160, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        for (int i = 0; i < data.length; i++) {
+            RegionStat.render(g, data[i], (i % 8) * 20, (i / 8) * 20, 18, 18);
+        }
+        g.setColor(new Color(0, 0, 0, 20));
+        for (int f = 0; f < 64; f++) {
+            for (int t = m.nextSetBit(f, 0); t >= 0; t = m.nextSetBit(f, t + 1)) {
+                g.drawLine((f % 8) * 20 + 10, (f / 8) * 20 + 10, (t % 8) * 20 + 10, (t / 8) * 20 + 10);
+            }
+        }
+        g.dispose();
+
+        // Repeated blending rounds differently, so allow a little slack per channel
+        for (int y = 0; y < 160; y++) {
+            for (int x = 0; x < 160; x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((e >>> shift) & 0xff) - ((a >>> shift) & 0xff));
+                    if (diff > 2) {
+                        fail(String.format("(%d, %d): %08x, expected %08x", x, y, a, e));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bundleWeightsCountBlockPairs() {
+        int cols = 64;
+        int size = cols * cols;
+        ConnectionMatrix m = matrix(size, 3 * RegionMap.BUNDLE_THRESHOLD, 3);
+        int side = RegionMap.blockSide(cols, cols);
+        assertEquals(8, side);
+        int blocks = RegionMap.MAX_BLOCKS;
+        int[] weights = RegionMap.bundleWeights(m, cols, side, 8, blocks);
+
+        int[] expected = new int[blocks * blocks];
+        for (int f = 0; f < size; f++) {
+            for (int t = 0; t < size; t++) {
+                int bf = (f / cols / side) * 8 + (f % cols) / side;
+                int bt = (t / cols / side) * 8 + (t % cols) / side;
+                if (m.get(f, t) && bf != bt) {
+                    expected[Math.min(bf, bt) * blocks + Math.max(bf, bt)]++;
+                }
+            }
+        }
+        assertArrayEquals(expected, weights);
+
+        // Grids that do not divide evenly still stay within the block limit
+        for (int c = 1; c < 200; c += 7) {
+            int r = 1 + 4000 / c;
+            int s = RegionMap.blockSide(c, r);
+            assertTrue(((c + s - 1) / s) * ((r + s - 1) / s) <= RegionMap.MAX_BLOCKS);
+        }
+    }
+
+    @Test
+    public void overlayRebuiltOnlyForNewMatrix() {
+        long[] data = words(4096);
+        ConnectionMatrix m = matrix(4096, 3 * RegionMap.BUNDLE_THRESHOLD, 4);
+        RegionMap map = new RegionMap();
+        map.resize(300, 300);
+
+        Snapshot first = new Snapshot(0, 1024, data, m, 0);
+        BufferedImage before = paint(map, 300, 300, first);
+        assertEquals(1, map.overlayBuilds());
+
+        // New region data, same matrix instance
+        long[] changed = data.clone();
+        changed[0] = RegionStat.pack(1, 1, 0, 0, 0, RegionState.HUMONGOUS);
+        Snapshot second = new Snapshot(first, 1, changed, m, 0);
+        paint(map, 300, 300, second);
+        assertEquals(1, map.overlayBuilds());
+
+        // A different matrix
+        Snapshot third = new Snapshot(second, 2, data, matrix(4096, 3 * RegionMap.BUNDLE_THRESHOLD, 5), 0);
+        paint(map, 300, 300, third);
+        assertEquals(2, map.overlayBuilds());
+
+        // The view changed
+        map.zoom(-1, 150, 150);
+        paint(map, 300, 300, third);
+        assertEquals(3, map.overlayBuilds());
+
+        // Back to the first matrix, which paints as before
+        map.zoom(1, 150, 150);
+        assertSame(before, paint(map, 300, 300, new Snapshot(third, 3, data, m, 0)));
+    }
+
+    @Test
+    public void zoomKeepsAnchor() {
+        long[] data = words(64);
+        RegionMap map = new RegionMap();
+        map.resize(160, 160);
+        Snapshot s = new Snapshot(0, 1024, data, null, 0);
+        paint(map, 160, 160, s);
+        map.zoom(-1, 0, 0);
+        BufferedImage actual = paint(map, 160, 160, s);
+
+        BufferedImage expected = new BufferedImage(160, 160, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        RegionStat.render(g, data[0], 0, 0, 38, 38);
+        RegionStat.render(g, data[1], 40, 0, 38, 38);
+        g.dispose();
+        assertEquals(expected.getRGB(30, 30), actual.getRGB(30, 30));
+        assertEquals(expected.getRGB(70, 30), actual.getRGB(70, 30));
+
+        // Panning past the edge of the grid stops there
+        map.pan(100, 100);
+        assertSame(actual, paint(map, 160, 160, s));
+    }
+
+    @Test
+    public void tilesFollowChanges() {
+        // Half a pixel per region, so regions are painted in 8x8 tiles
+        long[] data = words(40000);
+        Snapshot first = new Snapshot(0, 1024, data, null, 0);
+        long[] changed = data.clone();
+        for (int i = 0; i < 200 * 8; i += 3) {
+            changed[i] = RegionStat.pack(1, 1, 0, 0, 0, RegionState.HUMONGOUS);
+        }
+        Snapshot second = new Snapshot(first, 1, changed, null, 0);
+
+        RegionMap incremental = new RegionMap();
+        incremental.resize(100, 100);
+        paint(incremental, 100, 100, first);
+        BufferedImage actual = paint(incremental, 100, 100, second);
+
+        RegionMap fresh = new RegionMap();
+        fresh.resize(100, 100);
+        assertSame(paint(fresh, 100, 100, second), actual);
+
+        BufferedImage expected = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        RegionStat.render(g, RegionStat.pack(1, 1, 0, 0, 0, RegionState.HUMONGOUS), 0, 0, 2, 2);
+        g.dispose();
+        assertNotEquals(0, actual.getRGB(1, 1));
+        assertEquals(expected.getRGB(0, 0), actual.getRGB(0, 0));
+    }
+
+    @Test
+    public void bandsMatchSingleThread() {
+        long[] data = words(16384);
+        Snapshot first = new Snapshot(0, 1024, data, null, 0);
+        long[] changed = data.clone();
+        for (int i = 0; i < changed.length; i += 2) {
+            changed[i] = data[(i + 5) % data.length];
+        }
+        Snapshot second = new Snapshot(first, 1, changed, null, 0);
+
+        RegionMap serial = new RegionMap(1);
+        RegionMap parallel = new RegionMap(4);
+        serial.resize(700, 500);
+        parallel.resize(700, 500);
+        assertSame(paint(serial, 700, 500, first), paint(parallel, 700, 500, first));
+        assertSame(paint(serial, 700, 500, second), paint(parallel, 700, 500, second));
+
+        serial.zoom(1, 0, 0);
+        parallel.zoom(1, 0, 0);
+        serial.zoom(-2, 350, 250);
+        parallel.zoom(-2, 350, 250);
+        assertSame(paint(serial, 700, 500, first), paint(parallel, 700, 500, first));
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RegionRasterTest {
+
+    private static void assertSameAsGraphics(long data, int x, int y, int w, int h) {
+        BufferedImage expected = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        RegionStat.render(g, data, x, y, w, h);
+        g.dispose();
+
+        BufferedImage actual = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        new RegionRaster(actual).render(data, x, y, w, h);
+
+        for (int py = 0; py < expected.getHeight(); py++) {
+            for (int px = 0; px < expected.getWidth(); px++) {
+                if (expected.getRGB(px, py) != actual.getRGB(px, py)) {
+                    fail(String.format("%s at %d,%d %dx%d differs at (%d, %d): %08x, expected %08x",
+                            RegionStat.state(data), x, y, w, h, px, py, actual.getRGB(px, py), expected.getRGB(px, py)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameAsGraphics() {
+        Random r = new Random(1);
+        for (RegionState state : RegionState.values()) {
+            for (int i = 0; i < 200; i++) {
+                long data = RegionStat.pack(r.nextInt(101) / 100F, r.nextInt(101) / 100F,
+                        r.nextInt(50) / 100F, r.nextInt(40) / 100F, r.nextInt(40) / 100F, state);
+                int w = 2 + r.nextInt(24);
+                int h = r.nextBoolean() ? w : 2 + r.nextInt(24);
+                assertSameAsGraphics(data, 1 + r.nextInt(10), 1 + r.nextInt(5), w, h);
+            }
+        }
+    }
+
+    @Test
+    public void clippedAtEdges() {
+        for (RegionState state : RegionState.values()) {
+            long data = RegionStat.pack(0.7F, 0.4F, 0.2F, 0.2F, 0.3F, state);
+            assertSameAsGraphics(data, -5, -3, 12, 12);
+            assertSameAsGraphics(data, 33, 25, 12, 9);
+            assertSameAsGraphics(data, 3, 3, -1, -1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherImageTypes() {
+        new RegionRaster(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RegionStatTest {
+
+    @Test
+    public void packRoundTrip() {
+        for (RegionState state : RegionState.values()) {
+            for (int p = 0; p <= 100; p++) {
+                int q = 100 - p;
+                long data = RegionStat.pack(p / 100F, q / 100F, (p / 3) / 100F, (q / 3) / 100F, (p % 7) / 100F, state);
+                assertEquals(state, RegionStat.state(data));
+                assertEquals(p, RegionStat.usedPercent(data));
+                assertEquals(q, RegionStat.livePercent(data));
+                assertEquals(p / 3, RegionStat.tlabPercent(data));
+                assertEquals(q / 3, RegionStat.gclabPercent(data));
+                assertEquals(p % 7, RegionStat.sharedPercent(data));
+
+                RegionStat rs = new RegionStat(data, null);
+                assertEquals(state, rs.state());
+                assertEquals(p / 100F, rs.used(), 0F);
+                assertEquals(q / 100F, rs.live(), 0F);
+                assertEquals((p / 3) / 100F, rs.tlabAllocs(), 0F);
+                assertEquals((q / 3) / 100F, rs.gclabAllocs(), 0F);
+                assertEquals((p % 7) / 100F, rs.sharedAllocs(), 0F);
+                assertEquals(new RegionStat(p / 100F, q / 100F, (p / 3) / 100F, (q / 3) / 100F, (p % 7) / 100F, state), rs);
+            }
+        }
+    }
+
+    @Test
+    public void levelsRoundToPercents() {
+        long data = RegionStat.pack(0.333F, 0.6666F, 0.004F, 0.005F, 1F, RegionState.REGULAR);
+        assertEquals(33, RegionStat.usedPercent(data));
+        assertEquals(67, RegionStat.livePercent(data));
+        assertEquals(0, RegionStat.tlabPercent(data));
+        assertEquals(1, RegionStat.gclabPercent(data));
+        assertEquals(100, RegionStat.sharedPercent(data));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownState() {
+        RegionStat.state(0x3fL << 58);
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RenderTest {
+
+    private static final long REGION_SIZE = 1000;
+
+    private static long[] words(int regions, float used, float live, RegionState state) {
+        long[] data = new long[regions];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = RegionStat.pack(used, live, 0F, 0F, 0F, state);
+        }
+        return data;
+    }
+
+    private static Snapshot snapshot(long time, long[] data) {
+        return new Snapshot(time, REGION_SIZE, data, null, 0);
+    }
+
+    @Test
+    public void foldKeepsPeaks() {
+        Snapshot idle = snapshot(0, words(10, 0.1F, 0.1F, RegionState.REGULAR));
+        ShenandoahVisualizer.Render render = new ShenandoahVisualizer.Render(() -> idle, null, 10);
+
+        // Ten samples per history entry, with one short spike in the middle
+        for (int t = 0; t < 10; t++) {
+            long[] data = words(10, 0.1F, 0.1F, RegionState.REGULAR);
+            if (t == 3) {
+                data[0] = RegionStat.pack(1F, 0.9F, 0F, 0F, 0F, RegionState.CSET);
+                data[1] = RegionStat.pack(1F, 1F, 0F, 0F, 0F, RegionState.HUMONGOUS);
+                data[2] = RegionStat.pack(0.5F, 0F, 0F, 0F, 0F, RegionState.TRASH);
+            }
+            render.accept(snapshot(t * 10, data));
+        }
+
+        SnapshotHistory raw = render.history.raw();
+        assertEquals(1, raw.end());
+        assertEquals(3200, raw.used(0));
+        assertEquals(2600, raw.live(0));
+        assertEquals(900, raw.collectionSet(0));
+        assertEquals(1000, raw.humongous(0));
+        assertEquals(500, raw.trash(0));
+    }
+
+    @Test
+    public void onlySeeksResetHistory() {
+        Snapshot idle = snapshot(0, words(10, 0.1F, 0.1F, RegionState.REGULAR));
+        long[] jumps = new long[1];
+        SnapshotSource source = new SnapshotSource() {
+            @Override
+            public Snapshot snapshot() {
+                return idle;
+            }
+
+            @Override
+            public long jumps() {
+                return jumps[0];
+            }
+        };
+        ShenandoahVisualizer.Render render = new ShenandoahVisualizer.Render(source, null, 100);
+
+        // Reverse playback: the graph keeps growing forward
+        for (int t = 0; t < 10; t++) {
+            render.accept(snapshot(10000 - t * 100, words(10, t / 10F, 0F, RegionState.REGULAR)));
+        }
+        SnapshotHistory raw = render.history.raw();
+        assertEquals(10, raw.end());
+        for (int t = 0; t < 10; t++) {
+            assertEquals(10000 + t * 100, raw.time(t));
+            assertEquals(t * 1000, raw.used(t));
+        }
+
+        // A seek starts over
+        jumps[0]++;
+        render.accept(snapshot(500, words(10, 0.5F, 0F, RegionState.REGULAR)));
+        raw = render.history.raw();
+        assertEquals(1, raw.end());
+        assertEquals(500, raw.time(0));
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ReplayTest {
+
+    private static List<Snapshot> record(Path file, int regions, int count) throws IOException {
+        Random r = new Random(7);
+        long[] data = new long[regions];
+        List<Snapshot> list = new ArrayList<>();
+        Snapshot prev = null;
+        try (RecordingWriter w = new RecordingWriter(file, regions, 1024, 0)) {
+            for (int t = 0; t < count; t++) {
+                for (int c = 0; c < 5; c++) {
+                    data[r.nextInt(regions)] = RegionStat.pack(r.nextInt(101) / 100F, 0F, 0F, 0F, 0F, RegionState.REGULAR);
+                }
+                long time = 1000 + t * 10L;
+                prev = (prev == null) ?
+                        new Snapshot(time, 1024, data.clone(), null, 0) :
+                        new Snapshot(prev, time, data, null, t % 3);
+                list.add(prev);
+                w.write(prev);
+            }
+        }
+        return list;
+    }
+
+    private static void checkSeeks(Path file, List<Snapshot> expected) throws IOException {
+        try (ReplayProvider replay = new ReplayProvider(file)) {
+            assertEquals(1000, replay.firstTime());
+            assertEquals(expected.get(expected.size() - 1).time(), replay.lastTime());
+            replay.togglePause();
+
+            // Forward, backward across key frames, and in between frames
+            long[] targets = { 1000, 5000, 3555, 3565, 1005, 9990, 2570, 2560, 20000, 0 };
+            for (long target : targets) {
+                replay.seekTo(target);
+                Snapshot s = replay.snapshot();
+                long clamped = Math.max(1000, Math.min(replay.lastTime(), target));
+                Snapshot e = expected.get((int) ((clamped - 1000) / 10));
+                assertEquals(e.time(), s.time());
+                assertEquals(e.phase(), s.phase());
+                assertEquals(e, s);
+            }
+        }
+    }
+
+    @Test
+    public void seekWithIndex() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        try {
+            checkSeeks(file, record(file, 300, 900));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void seekWithoutIndex() throws IOException {
+        Path file = Files.createTempFile("regions", ".rec");
+        try {
+            List<Snapshot> expected = record(file, 300, 900);
+            // Drop the trailer, as if the recorder crashed before closing
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(ch.size() - 1);
+            }
+            checkSeeks(file, expected);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    @Test
+    public void exportStopsAtEnd() throws Exception {
+        Path file = Files.createTempFile("regions", ".rec");
+        Path dir = Files.createTempDirectory("frames");
+        try {
+            record(file, 300, 900);
+            try (ReplayProvider replay = new ReplayProvider(file)) {
+                // 9 s of recording at 2 fps, stepped through without counting seeks
+                assertEquals(18, ShenandoahVisualizer.exportRecording(replay, dir, 10, 2));
+                assertEquals(9500, replay.position());
+                assertTrue(replay.isPaused());
+                assertEquals(0, replay.jumps());
+            }
+            assertTrue(Files.exists(dir.resolve("frame-000017.png")));
+            assertFalse(Files.exists(dir.resolve("frame-000018.png")));
+        } finally {
+            Files.deleteIfExists(file);
+            try (Stream<Path> s = Files.walk(dir)) {
+                s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+}
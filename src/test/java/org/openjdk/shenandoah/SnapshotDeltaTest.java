@@ -0,0 +1,100 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SnapshotDeltaTest {
+
+    private static final RegionState[] STATES = {
+            RegionState.EMPTY_UNCOMMITTED, RegionState.EMPTY_COMMITTED, RegionState.REGULAR,
+            RegionState.HUMONGOUS, RegionState.CSET, RegionState.TRASH, RegionState.PINNED_CSET,
+    };
+
+    private static long randomWord(Random r) {
+        return RegionStat.pack(r.nextInt(101) / 100F, r.nextInt(101) / 100F, 0F, 0F, 0F,
+                STATES[r.nextInt(STATES.length)]);
+    }
+
+    @Test
+    public void unchanged() {
+        long[] data = new long[64];
+        Random r = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = randomWord(r);
+        }
+        Snapshot first = new Snapshot(0, 1024, data.clone(), null, 0);
+        assertTrue(first.delta().isFull());
+
+        Snapshot second = new Snapshot(first, 100, data, null, 0);
+        assertTrue(second.delta().isEmpty());
+        assertEquals(first, second);
+
+        Snapshot third = new Snapshot(second, 200, data, null, 1);
+        assertFalse(third.delta().isEmpty());
+        assertTrue(third.delta().phaseChanged());
+        assertEquals(0, third.delta().changedCount());
+    }
+
+    @Test
+    public void aggregatesChangedAgreesWithBetween() {
+        long[] data = new long[4];
+        data[0] = RegionStat.pack(0.5F, 0.5F, 0F, 0F, 0F, RegionState.REGULAR);
+        Snapshot first = new Snapshot(0, 1024, data.clone(), null, 0);
+
+        // Same used, live and collection set; only humongous changes
+        data[0] = RegionStat.pack(0.5F, 0.5F, 0F, 0F, 0F, RegionState.HUMONGOUS);
+        Snapshot second = new Snapshot(first, 100, data, null, 0);
+        assertEquals(first.used(), second.used());
+        assertNotEquals(first.humongous(), second.humongous());
+        assertTrue(second.delta().aggregatesChanged());
+        assertTrue(SnapshotDelta.between(first, second).aggregatesChanged());
+
+        // Only trash changes
+        data[0] = RegionStat.pack(0.5F, 0.5F, 0F, 0F, 0F, RegionState.TRASH);
+        Snapshot third = new Snapshot(second, 200, data, null, 0);
+        assertTrue(third.delta().aggregatesChanged());
+        assertTrue(SnapshotDelta.between(second, third).aggregatesChanged());
+
+        Snapshot fourth = new Snapshot(third, 300, data, null, 0);
+        assertFalse(fourth.delta().aggregatesChanged());
+        assertFalse(SnapshotDelta.between(third, fourth).aggregatesChanged());
+    }
+
+    @Test
+    public void incrementalAggregates() {
+        Random r = new Random(42);
+        long[] data = new long[512];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = randomWord(r);
+        }
+        Snapshot prev = new Snapshot(0, 1024 * 1024, data.clone(), null, 0);
+        for (int t = 1; t < 50; t++) {
+            int changes = r.nextInt(20);
+            for (int c = 0; c < changes; c++) {
+                data[r.nextInt(data.length)] = randomWord(r);
+            }
+            Snapshot cur = new Snapshot(prev, t, data, null, 0);
+            Snapshot full = new Snapshot(t, 1024 * 1024, data.clone(), null, 0);
+
+            assertEquals(full.used(), cur.used());
+            assertEquals(full.live(), cur.live());
+            assertEquals(full.collectionSet(), cur.collectionSet());
+            assertEquals(full.humongous(), cur.humongous());
+            assertEquals(full.trash(), cur.trash());
+            for (RegionState s : RegionState.values()) {
+                assertEquals(full.regionCount(s), cur.regionCount(s));
+            }
+
+            SnapshotDelta d = cur.delta();
+            for (int i = 0; i < d.changedCount(); i++) {
+                int idx = d.changed(i);
+                assertNotEquals(prev.get(idx), cur.get(idx));
+            }
+            prev = cur;
+        }
+    }
+
+}
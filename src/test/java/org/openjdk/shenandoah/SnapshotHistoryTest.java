@@ -0,0 +1,66 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotHistoryTest {
+
+    private static SnapshotView view(long time, int usedPct, int status) {
+        long[] data = new long[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = RegionStat.pack(usedPct / 100F, 0F, 0F, 0F, 0F, RegionState.REGULAR);
+        }
+        return new SnapshotView(new Snapshot(time, 1000, data, null, status));
+    }
+
+    private static long used(int t) {
+        return (t * 37) % 101 * 1000;
+    }
+
+    @Test
+    public void wraparound() {
+        SnapshotHistory h = new SnapshotHistory(16);
+        assertEquals(16, h.capacity());
+        for (int t = 0; t < 100; t++) {
+            h.add(view(t * 10L, (t * 37) % 101, (t % 2 == 0) ? 0x0 : 0x1));
+        }
+
+        assertEquals(100, h.end());
+        assertEquals(15, h.size(h.end()));
+        for (long seq = h.end() - h.size(h.end()); seq < h.end(); seq++) {
+            int t = (int) seq;
+            assertEquals(t * 10L, h.time(seq));
+            assertEquals(used(t), h.used(seq));
+            assertEquals(used(t), h.min(SnapshotHistory.USED, seq));
+            assertEquals(used(t), h.max(SnapshotHistory.USED, seq));
+            assertEquals((t % 2 == 0) ? Phase.IDLE : Phase.MARKING, h.phase(seq));
+
+            // Used change over the last SMOOTH entries, across the wrap
+            long sum = 0;
+            for (int s = Math.max(1, t - SnapshotHistory.SMOOTH + 2); s <= t; s++) {
+                sum += used(s) - used(s - 1);
+            }
+            assertEquals(sum, h.allocSum(seq));
+            assertEquals(Math.min(SnapshotHistory.SMOOTH, t + 1), h.allocSpan(seq));
+        }
+    }
+
+    @Test
+    public void bucketsWrapAround() {
+        SnapshotHistory h = new SnapshotHistory(16, 100, 10);
+        for (int t = 0; t < 1000; t++) {
+            h.add(view(t * 10L, t % 10, 0x0));
+        }
+
+        // The last bucket is still open
+        assertEquals(99, h.end());
+        for (long seq = h.end() - h.size(h.end()); seq < h.end(); seq++) {
+            assertEquals(seq * 100, h.time(seq));
+            assertEquals(0, h.min(SnapshotHistory.USED, seq));
+            assertEquals(9000, h.max(SnapshotHistory.USED, seq));
+            assertEquals(4500, h.used(seq));
+        }
+    }
+
+}
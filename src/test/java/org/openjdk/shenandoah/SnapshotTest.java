@@ -0,0 +1,74 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    private static final long REGION_SIZE = 1024 * 1024;
+
+    @Test
+    public void trashInBytes() {
+        long[] data = {
+                RegionStat.pack(1F, 0F, 0F, 0F, 0F, RegionState.TRASH),
+                RegionStat.pack(0.5F, 0F, 0F, 0F, 0F, RegionState.TRASH),
+                RegionStat.pack(0.8F, 0.2F, 0F, 0F, 0F, RegionState.REGULAR),
+        };
+        Snapshot s = new Snapshot(0, REGION_SIZE, data, null, 0);
+
+        // Same unit as used() and live(), not a number of regions
+        assertEquals(REGION_SIZE * 150 / 100, s.trash());
+        assertEquals(REGION_SIZE * 230 / 100, s.used());
+        assertEquals(2, s.regionCount(RegionState.TRASH));
+    }
+
+    @Test
+    public void totalsMatchBruteForce() {
+        Random r = new Random(3);
+        RegionState[] states = RegionState.values();
+        long[] data = new long[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = RegionStat.pack(r.nextInt(101) / 100F, r.nextInt(101) / 100F, 0F, 0F, 0F,
+                    states[r.nextInt(states.length)]);
+        }
+        Snapshot s = new Snapshot(0, REGION_SIZE, data, null, 0);
+
+        long used = 0, live = 0, cset = 0, trash = 0, uncommitted = 0;
+        int[] counts = new int[states.length];
+        for (long d : data) {
+            RegionState st = RegionStat.state(d);
+            int u = RegionStat.usedPercent(d);
+            int l = RegionStat.livePercent(d);
+            counts[st.ordinal()]++;
+            used += u;
+            live += l;
+            if (st == RegionState.CSET || st == RegionState.PINNED_CSET) cset += l;
+            if (st == RegionState.TRASH) trash += u;
+            if (st == RegionState.EMPTY_UNCOMMITTED) uncommitted += u;
+        }
+
+        assertEquals(REGION_SIZE * data.length, s.total());
+        assertEquals(REGION_SIZE * used / 100, s.used());
+        assertEquals(REGION_SIZE * live / 100, s.live());
+        assertEquals(REGION_SIZE * cset / 100, s.collectionSet());
+        assertEquals(REGION_SIZE * trash / 100, s.trash());
+        assertEquals(REGION_SIZE * used / 100 - REGION_SIZE * uncommitted / 100, s.committed());
+        for (RegionState st : states) {
+            assertEquals(counts[st.ordinal()], s.regionCount(st));
+        }
+        // Each state is rounded down to bytes separately
+        long expectedHumongous = 0;
+        for (RegionState st : new RegionState[] { RegionState.HUMONGOUS, RegionState.PINNED_HUMONGOUS }) {
+            long pct = 0;
+            for (long d : data) {
+                if (RegionStat.state(d) == st) pct += RegionStat.usedPercent(d);
+            }
+            expectedHumongous += REGION_SIZE * pct / 100;
+        }
+        assertEquals(expectedHumongous, s.humongous());
+    }
+
+}
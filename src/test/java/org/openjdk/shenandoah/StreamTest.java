@@ -0,0 +1,225 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StreamTest {
+
+    private static final long TIMEOUT_S = 10;
+
+    private static class Collecting implements Flow.Subscriber<Snapshot> {
+        final BlockingQueue<Snapshot> received = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Snapshot item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Test
+    public void multiplexCollectors() throws Exception {
+        BlockingQueue<RemoteSource> sources = new LinkedBlockingQueue<>();
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (StreamServer server = new StreamServer(any, sources::add)) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port());
+            List<Snapshot> a = RecordingTest.generate(500, 300, 3);
+            List<Snapshot> b = RecordingTest.generate(2000, 300, 4);
+
+            RemoteSource ra;
+            RemoteSource rb;
+            try (StreamCollector ca = new StreamCollector(address, "a");
+                 StreamCollector cb = new StreamCollector(address, "b")) {
+                ca.send(a.get(0));
+                ra = sources.poll(TIMEOUT_S, TimeUnit.SECONDS);
+                cb.send(b.get(0));
+                rb = sources.poll(TIMEOUT_S, TimeUnit.SECONDS);
+                assertNotNull(ra);
+                assertNotNull(rb);
+                assertEquals("a", ra.name());
+                assertEquals("b", rb.name());
+                assertEquals(a.get(0), ra.snapshot());
+                assertEquals(b.get(0), rb.snapshot());
+
+                Collecting sa = new Collecting();
+                Collecting sb = new Collecting();
+                ra.publisher().subscribe(sa);
+                rb.publisher().subscribe(sb);
+
+                for (int i = 1; i < a.size(); i++) {
+                    ca.send(a.get(i));
+                    cb.send(b.get(i));
+                }
+                for (int i = 1; i < a.size(); i++) {
+                    assertReceived(a.get(i), sa.received.poll(TIMEOUT_S, TimeUnit.SECONDS));
+                    assertReceived(b.get(i), sb.received.poll(TIMEOUT_S, TimeUnit.SECONDS));
+                }
+                assertEquals(0, ra.dropped());
+                assertEquals(0, rb.dropped());
+            }
+
+            // Closed collectors show up as disconnected sources
+            waitDisconnected(ra);
+            waitDisconnected(rb);
+        }
+    }
+
+    @Test
+    public void reconnectStartsWithKeyFrame() throws Exception {
+        BlockingQueue<RemoteSource> sources = new LinkedBlockingQueue<>();
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        List<Snapshot> list = RecordingTest.generate(1000, 20, 5);
+        try (StreamServer server = new StreamServer(any, sources::add)) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port());
+            try (StreamCollector c = new StreamCollector(address, "jvm")) {
+                c.send(list.get(0));
+                c.send(list.get(1));
+                RemoteSource first = sources.poll(TIMEOUT_S, TimeUnit.SECONDS);
+                assertNotNull(first);
+
+                // Viewer drops the connection; the collector notices and starts over
+                first.close();
+                waitDisconnected(first);
+                try {
+                    for (int i = 2; i < 10; i++) {
+                        c.send(list.get(i));
+                        Thread.sleep(10);
+                    }
+                    fail("Sending over a closed connection should fail");
+                } catch (IOException e) {
+                    assertFalse(c.isConnected());
+                }
+
+                c.send(list.get(10));
+                RemoteSource second = sources.poll(TIMEOUT_S, TimeUnit.SECONDS);
+                assertNotNull(second);
+                assertEquals(list.get(10), second.snapshot());
+                assertTrue(second.snapshot().delta().isFull());
+            }
+        }
+    }
+
+    @Test
+    public void connectBacksOff() throws Exception {
+        // A port nobody listens on
+        int port;
+        try (ServerSocket s = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = s.getLocalPort();
+        }
+        List<Snapshot> list = RecordingTest.generate(1000, 3, 6);
+        try (StreamCollector c = new StreamCollector(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), "jvm")) {
+            try {
+                c.send(list.get(0));
+                fail("Connecting to a closed port should fail");
+            } catch (IOException e) {
+                assertFalse(c.isConnected());
+            }
+            // Skipped without another attempt until the backoff expires
+            assertFalse(c.send(list.get(1)));
+            assertFalse(c.send(list.get(2)));
+        }
+    }
+
+    @Test
+    public void slowSubscribersDropWithoutBlocking() {
+        List<Snapshot> list = RecordingTest.generate(100, RemoteSource.BUFFER_SIZE + 10, 7);
+        RemoteSource source = new RemoteSource("jvm", list.get(0), () -> {});
+        // Never requests anything, so every sample stays buffered
+        source.publisher().subscribe(new Flow.Subscriber<Snapshot>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(Snapshot item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        for (Snapshot s : list) {
+            source.publish(s);
+        }
+        assertEquals(10, source.dropped());
+        assertSame(list.get(list.size() - 1), source.snapshot());
+        assertTrue(source.status().endsWith("10 dropped"));
+    }
+
+    @Test
+    public void bogusStreamsAreDropped() throws Exception {
+        BlockingQueue<RemoteSource> sources = new LinkedBlockingQueue<>();
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (StreamServer server = new StreamServer(any, sources::add)) {
+            for (int regionCount : new int[] { -1, 0, Integer.MAX_VALUE / 4, RecordingFormat.MAX_REGION_COUNT + 1 }) {
+                ByteBuffer buf = ByteBuffer.allocate(64).order(RecordingFormat.ORDER);
+                RecordingFormat.writeHeader(buf, regionCount, 1024);
+                RecordingFormat.writeName(buf, "bogus");
+                assertDropped(server, buf);
+            }
+
+            // Valid header, but a frame with a negative length
+            ByteBuffer buf = ByteBuffer.allocate(64).order(RecordingFormat.ORDER);
+            RecordingFormat.writeHeader(buf, 10, 1024);
+            RecordingFormat.writeName(buf, "bogus");
+            buf.put(RecordingFormat.KEY);
+            buf.putInt(-100);
+            buf.putLong(0);
+            buf.putInt(0);
+            assertDropped(server, buf);
+        }
+        assertTrue(sources.isEmpty());
+    }
+
+    private static void assertDropped(StreamServer server, ByteBuffer buf) throws IOException {
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            s.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+            s.getOutputStream().write(buf.array(), 0, buf.position());
+            assertEquals(-1, s.getInputStream().read());
+        }
+    }
+
+    private static void waitDisconnected(RemoteSource s) throws InterruptedException {
+        for (int i = 0; i < TIMEOUT_S * 100 && s.isConnected(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(s.isConnected());
+    }
+
+    private static void assertReceived(Snapshot expected, Snapshot actual) {
+        assertNotNull(actual);
+        assertEquals(expected.time(), actual.time());
+        assertEquals(expected, actual);
+        assertEquals(expected.used(), actual.used());
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.openjdk.shenandoah;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TieredHistoryTest {
+
+    private static SnapshotView view(long time, float used, int status) {
+        long[] data = new long[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = RegionStat.pack(used, 0F, 0F, 0F, 0F, RegionState.REGULAR);
+        }
+        return new SnapshotView(new Snapshot(time, 1000, data, null, status));
+    }
+
+    @Test
+    public void rollup() {
+        TieredHistory h = new TieredHistory(100);
+        for (int t = 0; t < 250; t++) {
+            // Marking for the first 3 samples of every second
+            h.add(view(t * 100L, (t % 10) / 10F, (t % 10 < 3) ? 0x1 : 0x0));
+        }
+
+        SnapshotHistory raw = h.raw();
+        assertEquals(250, raw.end());
+        assertEquals(24_900, raw.time(raw.end() - 1));
+
+        SnapshotHistory seconds = h.select(60_000, 100);
+        assertEquals(1_000, seconds.period());
+        // The bucket for the 25th second is still open
+        assertEquals(24, seconds.end());
+        for (long seq = 0; seq < seconds.end(); seq++) {
+            assertEquals(seq * 1000, seconds.time(seq));
+            assertEquals(0, seconds.min(SnapshotHistory.USED, seq));
+            assertEquals(90_000, seconds.max(SnapshotHistory.USED, seq));
+            assertEquals(45_000, seconds.used(seq));
+            assertEquals(0.3F, seconds.phaseOccupancy(seq, Phase.MARKING), 0.001F);
+            assertEquals(Phase.IDLE, seconds.phase(seq));
+        }
+    }
+
+    @Test
+    public void selectCoarserTiers() {
+        TieredHistory h = new TieredHistory(100);
+        assertEquals(0, h.select(100_000, 1000).period());
+        assertEquals(1_000, h.select(3600_000, 2000).period());
+        assertEquals(10_000, h.select(6 * 3600_000, 2000).period());
+        assertEquals(60_000, h.select(48 * 3600_000L, 2000).period());
+    }
+
+}